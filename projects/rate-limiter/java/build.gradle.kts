@@ -12,6 +12,22 @@ java {
     }
 }
 
+// BulkTokenBuckets runs its SIMD kernel when both the kernel (the "vector" source set, the only code compiled
+// against the incubator module) and the module are present, scalar code otherwise. Only the benchmark task, and the
+// tests with -PvectorApi, resolve the module; everything else compiles and runs without the incubator warnings.
+val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+val vectorApi = providers.gradleProperty("vectorApi").isPresent
+
+val vector by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+tasks.named<JavaCompile>("compileVectorJava") {
+    // -Xlint:none drops the "using incubating module(s)" warning, which no other lint option controls
+    options.compilerArgs.addAll(vectorModule + "-Xlint:none")
+}
+
 dependencies {
     testImplementation(libs.bundles.test)
     testRuntimeOnly(libs.junit.platform.launcher)
@@ -55,8 +71,30 @@ tasks.test {
         showStackTraces = true
     }
     useJUnitPlatform()
+    if (vectorApi) {
+        classpath += vector.output
+        jvmArgs(vectorModule)
+    }
 }
 
 application {
     mainClass = "io.github.vkunitsyn.RateLimiterDemo"
 }
+
+tasks.register<JavaExec>("benchmark") {
+    group = "application"
+    description = "Runs a benchmark, select it with --args='--bench=<name>'"
+    classpath = vector.runtimeClasspath
+    mainClass = "io.github.vkunitsyn.RateLimiterBenchmark"
+    jvmArgs(vectorModule)
+    // without it the JDK HttpServer waits for delayed ACKs (Nagle), ~40ms per loopback request
+    jvmArgs("-Dsun.net.httpserver.nodelay=true")
+}
+
+tasks.register<JavaExec>("gateway") {
+    group = "application"
+    description = "Runs the rate-limiting HTTP gateway, configure it with --args"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass = "io.github.vkunitsyn.gateway.RateLimitingGateway"
+    jvmArgs("-Dsun.net.httpserver.nodelay=true")
+}
@@ -0,0 +1,28 @@
+package io.github.vkunitsyn;
+
+import io.github.vkunitsyn.benchmark.BulkRefillBenchmark;
+import io.github.vkunitsyn.benchmark.CombiningBenchmark;
+import io.github.vkunitsyn.benchmark.GatewayBenchmark;
+import io.github.vkunitsyn.benchmark.ParameterSweepBenchmark;
+import io.github.vkunitsyn.benchmark.ThrottledIoBenchmark;
+
+public final class RateLimiterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String bench = "gateway"; // default
+        for (String arg : args) {
+            if (arg.startsWith("--bench=")) {
+                bench = arg.substring("--bench=".length());
+            }
+        }
+
+        switch (bench) {
+            case "gateway" -> GatewayBenchmark.run(args);
+            case "bulk-refill" -> BulkRefillBenchmark.run(args);
+            case "throttled-io" -> ThrottledIoBenchmark.run(args);
+            case "combining" -> CombiningBenchmark.run(args);
+            case "sweep" -> ParameterSweepBenchmark.run(args);
+            default -> throw new IllegalArgumentException("Unknown --bench=" + bench);
+        }
+    }
+}
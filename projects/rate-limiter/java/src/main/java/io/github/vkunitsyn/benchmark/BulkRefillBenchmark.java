@@ -0,0 +1,81 @@
+package io.github.vkunitsyn.benchmark;
+
+import io.github.vkunitsyn.ratelimiter.BulkTokenBuckets;
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+/**
+ * Compares the SIMD and scalar paths of {@link BulkTokenBuckets} on the same batched workload: every batch
+ * advances the clock, refills all buckets and charges a random subset of them.
+ */
+public final class BulkRefillBenchmark {
+    private static final long PERIOD = Duration.ofMillis(10).toNanos();
+
+    private BulkRefillBenchmark() {}
+
+    public static void run(String[] args) {
+        int buckets = 4_096;
+        Duration duration = Duration.ofSeconds(3);
+        for (String arg : args) {
+            if (arg.startsWith("--buckets=")) {
+                buckets = Integer.parseInt(arg.substring("--buckets=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                duration = Duration.ofSeconds(Long.parseLong(arg.substring("--seconds=".length())));
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        long[] capacity = new long[buckets];
+        long[] refill = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+            capacity[i] = 10 + random.nextInt(1_000);
+            refill[i] = 1 + random.nextInt((int) capacity[i] / 10);
+        }
+        // a few pre-generated batches: ~half of the buckets asked for 1..3 permits
+        long[][] batches = new long[64][buckets];
+        for (long[] batch : batches) {
+            for (int i = 0; i < buckets; i++) {
+                batch[i] = random.nextBoolean() ? 1 + random.nextInt(3) : 0;
+            }
+        }
+
+        System.out.println("== bulk token bucket refill benchmark ==");
+        System.out.println("buckets=" + buckets + " duration=" + duration);
+        if (!new BulkTokenBuckets(capacity, refill, PERIOD, true).isVectorized()) {
+            System.out.println("jdk.incubator.vector is not available, the vector run falls back to scalar");
+        }
+
+        // warm-up, results discarded
+        measure(new BulkTokenBuckets(capacity, refill, PERIOD, false), batches, Duration.ofSeconds(1));
+        measure(new BulkTokenBuckets(capacity, refill, PERIOD, true), batches, Duration.ofSeconds(1));
+
+        double scalar = measure(new BulkTokenBuckets(capacity, refill, PERIOD, false), batches, duration);
+        double vector = measure(new BulkTokenBuckets(capacity, refill, PERIOD, true), batches, duration);
+        System.out.printf("scalar ns/bucket=%.2f%n", scalar);
+        System.out.printf("vector ns/bucket=%.2f%n", vector);
+        System.out.printf("speedup=%.2fx%n", scalar / vector);
+    }
+
+    /** Returns nanoseconds per bucket per batch. */
+    private static double measure(BulkTokenBuckets engine, long[][] batches, Duration duration) {
+        long[] retryAfter = new long[engine.size()];
+        long now = 0;
+        long granted = 0;
+        long rounds = 0;
+
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        while (System.nanoTime() < deadline) {
+            for (long[] batch : batches) {
+                now += PERIOD / 4;
+                granted += engine.tryAcquire(now, batch, retryAfter);
+            }
+            rounds += batches.length;
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        if (granted < 0) {
+            System.out.println(granted); // keeps the JIT from discarding the loop
+        }
+        return (double) elapsedNanos / rounds / engine.size();
+    }
+}
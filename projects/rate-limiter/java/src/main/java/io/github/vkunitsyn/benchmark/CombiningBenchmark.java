@@ -0,0 +1,129 @@
+package io.github.vkunitsyn.benchmark;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.SpacingLeakyBucket;
+import io.github.vkunitsyn.ratelimiter.concurrent.FlatCombiningRateLimiter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hammers one shared limiter from many threads and compares acquisitions per second of the plain
+ * {@code synchronized} {@link SpacingLeakyBucket}, the same bucket behind {@link FlatCombiningRateLimiter}, and a
+ * lock-free CAS variant of the same algorithm (GCRA).
+ */
+public final class CombiningBenchmark {
+    private static final long INTERVAL = 10; // 100M permits per second, high enough that most calls are granted
+    private static final long BURST = 1_000;
+
+    private CombiningBenchmark() {}
+
+    public static void run(String[] args) throws InterruptedException {
+        int[] threadCounts = {1, 4, 16, 64};
+        Duration duration = Duration.ofSeconds(2);
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                String[] counts = arg.substring("--threads=".length()).split(",");
+                threadCounts = new int[counts.length];
+                for (int i = 0; i < counts.length; i++) {
+                    threadCounts[i] = Integer.parseInt(counts[i]);
+                }
+            } else if (arg.startsWith("--seconds=")) {
+                duration = Duration.ofSeconds(Long.parseLong(arg.substring("--seconds=".length())));
+            }
+        }
+
+        System.out.println("== flat combining benchmark ==");
+        System.out.println("cpus=" + Runtime.getRuntime().availableProcessors() + " duration=" + duration);
+
+        // warm-up, results discarded
+        measure(() -> new SpacingLeakyBucket(BURST, INTERVAL), 4, Duration.ofSeconds(1));
+        measure(() -> new FlatCombiningRateLimiter(new SpacingLeakyBucket(BURST, INTERVAL)), 4, Duration.ofSeconds(1));
+        measure(() -> new CasGcra(BURST, INTERVAL), 4, Duration.ofSeconds(1));
+
+        System.out.printf("%8s %16s %16s %16s%n", "threads", "synchronized", "flat-combining", "cas");
+        for (int threads : threadCounts) {
+            double plain = measure(() -> new SpacingLeakyBucket(BURST, INTERVAL), threads, duration);
+            double combining = measure(
+                    () -> new FlatCombiningRateLimiter(new SpacingLeakyBucket(BURST, INTERVAL)), threads, duration);
+            double cas = measure(() -> new CasGcra(BURST, INTERVAL), threads, duration);
+            System.out.printf("%8d %13.2f M/s %13.2f M/s %13.2f M/s%n", threads, plain, combining, cas);
+        }
+    }
+
+    /** Returns millions of tryAcquire calls per second, all threads together. */
+    private static double measure(Supplier<RateLimiter> factory, int threads, Duration duration)
+            throws InterruptedException {
+        RateLimiter limiter = factory.get();
+        LongAdder calls = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long local = 0;
+                while ((local & 1023) != 0 || System.nanoTime() < deadline[0]) {
+                    limiter.tryAcquire(1);
+                    local++;
+                }
+                calls.add(local);
+            }));
+        }
+        long startNanos = System.nanoTime();
+        deadline[0] = startNanos + duration.toNanos();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        return calls.sum() * 1e3 / elapsedNanos;
+    }
+
+    /** The spacing bucket's algorithm with the state in one {@link AtomicLong}, updated by compare-and-set. */
+    private static final class CasGcra implements RateLimiter {
+        private final long maxBurst;
+        private final long intervalNanos;
+        private final AtomicLong nextFreeTimeNanos = new AtomicLong();
+
+        CasGcra(long maxBurst, long intervalNanos) {
+            this.maxBurst = maxBurst;
+            this.intervalNanos = intervalNanos;
+        }
+
+        @Override
+        public AcquireResult tryAcquire(long nowNanos, long permits) {
+            long limitNanos = nowNanos + maxBurst * intervalNanos;
+            while (true) {
+                long freeTimeNanos = nextFreeTimeNanos.get();
+                long nextNanos = Math.max(nowNanos, freeTimeNanos) + permits * intervalNanos;
+                if (nextNanos > limitNanos) {
+                    return new AcquireResult.Rejected(nextNanos - limitNanos);
+                }
+                if (nextFreeTimeNanos.compareAndSet(freeTimeNanos, nextNanos)) {
+                    return new AcquireResult.Acquired(permits);
+                }
+            }
+        }
+
+        @Override
+        public long availableTokens(long nowNanos) {
+            long slackNanos = nowNanos + maxBurst * intervalNanos - nextFreeTimeNanos.get();
+            return Math.max(0, Math.min(maxBurst, slackNanos / intervalNanos));
+        }
+
+        @Override
+        public long retryAfterNanos(long nowNanos, long permits) {
+            long thresholdNanos = nextFreeTimeNanos.get() - (maxBurst - permits) * intervalNanos;
+            return Math.max(0, thresholdNanos - nowNanos);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.vkunitsyn.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.vkunitsyn.gateway.RateLimitingGateway;
+import io.github.vkunitsyn.ratelimiter.PerKeyRateLimiter;
+import io.github.vkunitsyn.ratelimiter.TokenBucket;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loopback benchmark for {@link RateLimitingGateway}: the same closed-loop load is sent straight to a trivial
+ * upstream and through the gateway, the difference in mean latency is the gateway overhead per request.
+ */
+public final class GatewayBenchmark {
+    private static final byte[] UPSTREAM_BODY = "ok".getBytes(StandardCharsets.US_ASCII);
+
+    private GatewayBenchmark() {}
+
+    public static void run(String[] args) throws Exception {
+        int concurrency = 256;
+        Duration duration = Duration.ofSeconds(5);
+        for (String arg : args) {
+            if (arg.startsWith("--concurrency=")) {
+                concurrency = Integer.parseInt(arg.substring("--concurrency=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                duration = Duration.ofSeconds(Long.parseLong(arg.substring("--seconds=".length())));
+            }
+        }
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+                HttpClient client = HttpClient.newBuilder()
+                        .executor(executor)
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .build()) {
+            HttpServer upstream = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+            upstream.setExecutor(executor);
+            upstream.createContext("/", exchange -> {
+                try (exchange; OutputStream out = exchange.getResponseBody()) {
+                    exchange.sendResponseHeaders(200, UPSTREAM_BODY.length);
+                    out.write(UPSTREAM_BODY);
+                }
+            });
+            upstream.start();
+            URI upstreamUri = URI.create("http://" + loopback.getHostAddress() + ":" + upstream.getAddress().getPort());
+
+            // Every request passes: this isolates the cost of limiting + proxying.
+            var open = new PerKeyRateLimiter<String>(() -> new TokenBucket(Long.MAX_VALUE / 2, 1, 1));
+            // Every request after the first one is rejected: this is the cost of answering 429 locally.
+            var closed =
+                    new PerKeyRateLimiter<String>(() -> new TokenBucket(1, 1, Duration.ofHours(1).toNanos()), true);
+
+            try (var allowing = new RateLimitingGateway(
+                            new InetSocketAddress(loopback, 0), upstreamUri, open, RateLimitingGateway.byPath());
+                    var rejecting = new RateLimitingGateway(
+                            new InetSocketAddress(loopback, 0), upstreamUri, closed, RateLimitingGateway.byPath())) {
+                allowing.start();
+                rejecting.start();
+
+                System.out.println("== gateway benchmark ==");
+                System.out.println("concurrency=" + concurrency + " duration=" + duration);
+
+                URI allowingUri = URI.create("http://" + loopback.getHostAddress() + ":" + allowing.port() + "/bench");
+                URI rejectingUri =
+                        URI.create("http://" + loopback.getHostAddress() + ":" + rejecting.port() + "/bench");
+
+                // warm-up, results discarded
+                load(client, upstreamUri.resolve("/bench"), concurrency, Duration.ofSeconds(1));
+                load(client, allowingUri, concurrency, Duration.ofSeconds(1));
+                load(client, rejectingUri, concurrency, Duration.ofSeconds(1));
+
+                Result direct = load(client, upstreamUri.resolve("/bench"), concurrency, duration);
+                Result proxied = load(client, allowingUri, concurrency, duration);
+                Result rejected = load(client, rejectingUri, concurrency, duration);
+
+                direct.print("direct");
+                proxied.print("gateway-allowed");
+                rejected.print("gateway-rejected");
+                double overheadNanos = proxied.meanLatencyNanos() - direct.meanLatencyNanos();
+                System.out.printf("gatewayOverhead(us/request)=%.1f%n", overheadNanos / 1_000.0);
+            } finally {
+                upstream.stop(0);
+            }
+        }
+    }
+
+    private static Result load(HttpClient client, URI uri, int concurrency, Duration duration)
+            throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+        LongAdder requests = new LongAdder();
+        LongAdder latencyNanos = new LongAdder();
+        LongAdder rejections = new LongAdder();
+        LongAdder errors = new LongAdder();
+
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        Thread[] workers = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = Thread.ofVirtual().start(() -> {
+                while (System.nanoTime() < deadline) {
+                    long before = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() == 429) {
+                            rejections.increment();
+                        }
+                    } catch (IOException e) {
+                        errors.increment();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    latencyNanos.add(System.nanoTime() - before);
+                    requests.increment();
+                }
+            });
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        return new Result(requests.sum(), rejections.sum(), errors.sum(), latencyNanos.sum(), elapsedNanos);
+    }
+
+    private record Result(long requests, long rejections, long errors, long totalLatencyNanos, long elapsedNanos) {
+        double meanLatencyNanos() {
+            return (double) totalLatencyNanos / Math.max(1, requests);
+        }
+
+        void print(String name) {
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            System.out.printf(
+                    "%-17s requests=%d rps=%.0f meanLatency(us)=%.1f rejected=%d errors=%d%n",
+                    name, requests, requests / seconds, meanLatencyNanos() / 1_000.0, rejections, errors);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.vkunitsyn.benchmark;
+
+import io.github.vkunitsyn.ratelimiter.trace.ParameterSweep;
+import io.github.vkunitsyn.ratelimiter.trace.ParameterSweep.Candidate;
+import io.github.vkunitsyn.ratelimiter.trace.ParameterSweep.Score;
+import io.github.vkunitsyn.ratelimiter.trace.Workload;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sweeps a grid of configurations of all four algorithms over a recorded trace ({@code --trace=<file>}) or a
+ * synthetic bursty workload ({@code --events=<n>} at {@code --rate=<per second>}) and prints the Pareto front.
+ */
+public final class ParameterSweepBenchmark {
+    private static final long MS = Duration.ofMillis(1).toNanos();
+
+    private ParameterSweepBenchmark() {}
+
+    public static void run(String[] args) throws IOException {
+        Path trace = null;
+        int events = 1_000_000;
+        double rate = 10_000;
+        for (String arg : args) {
+            if (arg.startsWith("--trace=")) {
+                trace = Path.of(arg.substring("--trace=".length()));
+            } else if (arg.startsWith("--events=")) {
+                events = Integer.parseInt(arg.substring("--events=".length()));
+            } else if (arg.startsWith("--rate=")) {
+                rate = Double.parseDouble(arg.substring("--rate=".length()));
+            }
+        }
+        Workload workload = trace != null ? Workload.fromTrace(trace) : Workload.synthetic(events, rate, 10, 42);
+
+        List<Candidate> candidates = new ArrayList<>();
+        long[] sizes = {10, 20, 50, 100, 200, 500, 1_000, 2_000};
+        candidates.addAll(
+                ParameterSweep.tokenBuckets(sizes, new long[] {1, 2, 5, 10, 20}, new long[] {MS / 10, MS, 10 * MS}));
+        candidates.addAll(ParameterSweep.spacingBuckets(sizes, new long[] {20_000, 50_000, 100_000, 200_000, MS}));
+        candidates.addAll(ParameterSweep.fixedWindows(sizes, new long[] {MS, 10 * MS, 100 * MS}));
+        candidates.addAll(ParameterSweep.slidingWindows(sizes, new long[] {MS, 10 * MS, 100 * MS}));
+
+        System.out.println("== parameter sweep ==");
+        System.out.printf(
+                "events=%d keys=%d configurations=%d parallelism=%d%n",
+                workload.size(),
+                workload.keyCount(),
+                candidates.size(),
+                Runtime.getRuntime().availableProcessors());
+
+        long start = System.nanoTime();
+        List<Score> scores = ParameterSweep.evaluate(workload, candidates, 100 * MS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(
+                "evaluated in %.2f s, %.1f M decisions/s%n",
+                seconds, (double) workload.size() * candidates.size() / seconds / 1e6);
+
+        System.out.printf("%14s %12s %10s  %s%n", "admitted/s", "peak/100ms", "rejected", "configuration");
+        List<Score> front = ParameterSweep.paretoFront(scores);
+        for (int i = 0; i < front.size(); ) {
+            Score score = front.get(i);
+            // configurations with identical scores are listed once
+            int same = 1;
+            while (i + same < front.size() && sameObjectives(score, front.get(i + same))) {
+                same++;
+            }
+            System.out.printf(
+                    "%14.1f %12d %9.2f%%  %s%s%n",
+                    score.admittedPerSecond(),
+                    score.burstPeak(),
+                    score.rejectionRate() * 100,
+                    score.candidate().description(),
+                    same > 1 ? " and " + (same - 1) + " equivalent" : "");
+            i += same;
+        }
+    }
+
+    private static boolean sameObjectives(Score a, Score b) {
+        return a.admittedPerSecond() == b.admittedPerSecond()
+                && a.burstPeak() == b.burstPeak()
+                && a.rejectionRate() == b.rejectionRate();
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.vkunitsyn.benchmark;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.TokenBucket;
+import io.github.vkunitsyn.ratelimiter.io.ThrottledReadableByteChannel;
+import io.github.vkunitsyn.ratelimiter.io.ThrottledTransfer;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+/**
+ * Throttles byte copies at a multi-GB/s target and reports how close the achieved rate gets and how much CPU the
+ * copying thread burns. The channel run uses source and sink channels that only move buffer positions, so it
+ * measures the throttling itself rather than memcpy; the file run goes through {@link FileChannel#transferTo}.
+ */
+public final class ThrottledIoBenchmark {
+    private static final long NANOS_PER_SECOND = Duration.ofSeconds(1).toNanos();
+    private static final long REFILL_PERIOD = Duration.ofMillis(1).toNanos();
+
+    private ThrottledIoBenchmark() {}
+
+    public static void run(String[] args) throws IOException {
+        double gigabytesPerSecond = 2;
+        Duration duration = Duration.ofSeconds(3);
+        for (String arg : args) {
+            if (arg.startsWith("--gbps=")) {
+                gigabytesPerSecond = Double.parseDouble(arg.substring("--gbps=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                duration = Duration.ofSeconds(Long.parseLong(arg.substring("--seconds=".length())));
+            }
+        }
+        long bytesPerSecond = (long) (gigabytesPerSecond * 1e9);
+        long refillBytes = bytesPerSecond / (NANOS_PER_SECOND / REFILL_PERIOD);
+        long burstBytes = refillBytes * 10; // 10ms worth of traffic
+        long maxChunkBytes = burstBytes;
+
+        System.out.println("== throttled io benchmark ==");
+        System.out.printf("target=%.2f GB/s burst=%d bytes duration=%s%n", gigabytesPerSecond, burstBytes, duration);
+
+        // warm-up, results discarded
+        copyChannel(new TokenBucket(burstBytes, refillBytes, REFILL_PERIOD), maxChunkBytes, Duration.ofSeconds(1));
+
+        report(
+                "throttled channel",
+                copyChannel(new TokenBucket(burstBytes, refillBytes, REFILL_PERIOD), maxChunkBytes, duration),
+                bytesPerSecond);
+
+        Path file = Files.createTempFile("throttled-io", ".bin");
+        try {
+            Files.write(file, new byte[64 << 20]);
+            // what the machine manages without a limiter, the throttled copy cannot beat it
+            report("unthrottled transferTo", transferFile(file, null, maxChunkBytes, duration), bytesPerSecond);
+            report(
+                    "throttled transferTo",
+                    transferFile(
+                            file, new TokenBucket(burstBytes, refillBytes, REFILL_PERIOD), maxChunkBytes, duration),
+                    bytesPerSecond);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Result copyChannel(RateLimiter limiter, long maxChunkBytes, Duration duration) throws IOException {
+        ReadableByteChannel source = new ThrottledReadableByteChannel(new NullChannel(), limiter, maxChunkBytes);
+        WritableByteChannel sink = new NullChannel();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+        Meter meter = new Meter();
+        long bytes = 0;
+        while (!meter.elapsed(duration)) {
+            buffer.clear();
+            bytes += source.read(buffer);
+            buffer.flip();
+            sink.write(buffer);
+        }
+        return meter.result(bytes);
+    }
+
+    private static Result transferFile(Path file, RateLimiter limiter, long maxChunkBytes, Duration duration)
+            throws IOException {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel sink = new NullChannel();
+            ThrottledTransfer transfer = limiter == null ? null : new ThrottledTransfer(limiter, maxChunkBytes);
+            Meter meter = new Meter();
+            long bytes = 0;
+            while (!meter.elapsed(duration)) {
+                bytes += transfer == null
+                        ? source.transferTo(0, source.size(), sink)
+                        : transfer.transferTo(source, 0, source.size(), sink);
+            }
+            return meter.result(bytes);
+        }
+    }
+
+    private static void report(String name, Result result, long targetBytesPerSecond) {
+        double rate = result.bytes() * (double) NANOS_PER_SECOND / result.wallNanos();
+        System.out.printf(
+                "%-22s %7.3f GB/s (%+6.2f%% of target) cpu=%5.1f%% of one core%n",
+                name,
+                rate / 1e9,
+                (rate / targetBytesPerSecond - 1) * 100,
+                100.0 * result.cpuNanos() / result.wallNanos());
+    }
+
+    private record Result(long bytes, long wallNanos, long cpuNanos) {}
+
+    private static final class Meter {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        private final long startNanos = System.nanoTime();
+        private final long startCpuNanos = THREADS.getCurrentThreadCpuTime();
+
+        boolean elapsed(Duration duration) {
+            return System.nanoTime() - startNanos >= duration.toNanos();
+        }
+
+        Result result(long bytes) {
+            return new Result(
+                    bytes, System.nanoTime() - startNanos, THREADS.getCurrentThreadCpuTime() - startCpuNanos);
+        }
+    }
+
+    /** Produces and swallows bytes without touching them. */
+    private static final class NullChannel implements ReadableByteChannel, WritableByteChannel {
+        @Override
+        public int read(ByteBuffer dst) {
+            int n = dst.remaining();
+            dst.position(dst.limit());
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,299 @@
+package io.github.vkunitsyn.gateway;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.vkunitsyn.ratelimiter.FixedWindowCounter;
+import io.github.vkunitsyn.ratelimiter.KeyedRateLimiter;
+import io.github.vkunitsyn.ratelimiter.PerKeyRateLimiter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.SlidingWindowLog;
+import io.github.vkunitsyn.ratelimiter.SpacingLeakyBucket;
+import io.github.vkunitsyn.ratelimiter.TokenBucket;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Local HTTP gateway: every request is charged one permit against a keyed limiter, rejected requests get
+ * {@code 429 Too Many Requests} with a {@code Retry-After} header, allowed ones are proxied to the upstream.
+ *
+ * <p>Both the server and the upstream client run on virtual threads, so a blocked upstream call costs a
+ * parked virtual thread rather than a platform thread. Request and response bodies are streamed through, never
+ * buffered whole, so the size of an upload does not matter to the gateway's heap.
+ *
+ * <p>Keys come from the client (headers, paths), so a client can mint as many as it likes. Keys are capped at
+ * {@value #MAX_KEY_LENGTH} characters, and a {@link PerKeyRateLimiter} is swept every second for keys whose limiter
+ * has recovered, so its map only holds the keys that acquired within one refill of the limit.
+ */
+public final class RateLimitingGateway implements AutoCloseable {
+    private static final long NANOS_PER_SECOND = Duration.ofSeconds(1).toNanos();
+    static final int MAX_KEY_LENGTH = 256;
+
+    // Hop-by-hop headers (RFC 9110, section 7.6.1) plus the ones the JDK client/server manage themselves.
+    private static final Set<String> SKIPPED_HEADERS = Set.of(
+            "connection",
+            "content-length",
+            "expect",
+            "host",
+            "keep-alive",
+            "proxy-authenticate",
+            "proxy-authorization",
+            "proxy-connection",
+            "te",
+            "trailer",
+            "transfer-encoding",
+            "upgrade",
+            "date");
+
+    private final URI upstream;
+    private final KeyedRateLimiter<String> limiter;
+    private final Function<HttpExchange, String> keyResolver;
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final HttpServer server;
+    private final ScheduledExecutorService evictor;
+
+    public RateLimitingGateway(
+            InetSocketAddress address,
+            URI upstream,
+            KeyedRateLimiter<String> limiter,
+            Function<HttpExchange, String> keyResolver)
+            throws IOException {
+        this.upstream = Objects.requireNonNull(upstream, "upstream");
+        this.limiter = Objects.requireNonNull(limiter, "limiter");
+        this.keyResolver = Objects.requireNonNull(keyResolver, "keyResolver");
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.client = HttpClient.newBuilder()
+                .executor(executor)
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.evictor = limiter instanceof PerKeyRateLimiter<String>
+                ? Executors.newSingleThreadScheduledExecutor(
+                        Thread.ofPlatform().daemon().name("gateway-evictor").factory())
+                : null;
+    }
+
+    /**
+     * Keys requests by the given header, falling back to the client IP when the header is absent or longer than
+     * {@value #MAX_KEY_LENGTH} characters.
+     */
+    public static Function<HttpExchange, String> byHeader(String headerName) {
+        Objects.requireNonNull(headerName, "headerName");
+        return exchange -> {
+            String value = exchange.getRequestHeaders().getFirst(headerName);
+            return value != null && value.length() <= MAX_KEY_LENGTH ? value : clientAddress(exchange);
+        };
+    }
+
+    /**
+     * Keys requests by their URI path, i.e. every endpoint gets its own limit; longer paths are keyed by their first
+     * {@value #MAX_KEY_LENGTH} characters.
+     */
+    public static Function<HttpExchange, String> byPath() {
+        return exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            return path.length() <= MAX_KEY_LENGTH ? path : path.substring(0, MAX_KEY_LENGTH);
+        };
+    }
+
+    public void start() {
+        if (evictor != null && limiter instanceof PerKeyRateLimiter<String> perKey) {
+            evictor.scheduleWithFixedDelay(() -> perKey.evictIdle(System.nanoTime()), 1, 1, TimeUnit.SECONDS);
+        }
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        server.stop(0);
+        client.close();
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String key = keyResolver.apply(exchange);
+            RateLimiter.AcquireResult result = limiter.tryAcquire(key, System.nanoTime(), 1);
+            if (!result.isAcquired()) {
+                reject(exchange, result.retryAfterNanos());
+                return;
+            }
+            proxy(exchange);
+        }
+    }
+
+    private static void reject(HttpExchange exchange, long retryAfterNanos) throws IOException {
+        exchange.getRequestBody().close();
+        // Retry-After only carries whole seconds; round up so polite clients never come back too early.
+        long retryAfterSeconds = Math.max(1, Math.ceilDiv(retryAfterNanos, NANOS_PER_SECOND));
+        exchange.getResponseHeaders().set("Retry-After", Long.toString(retryAfterSeconds));
+        exchange.sendResponseHeaders(429, -1);
+    }
+
+    private void proxy(HttpExchange exchange) throws IOException {
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(upstreamRequest(exchange), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException | IllegalArgumentException e) {
+            exchange.sendResponseHeaders(502, -1);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+            return;
+        }
+
+        copyHeaders(response.headers().map(), exchange.getResponseHeaders());
+        try (InputStream body = response.body()) {
+            int status = response.statusCode();
+            long contentLength = response.headers().firstValueAsLong("content-length").orElse(-1);
+            if ("HEAD".equals(exchange.getRequestMethod()) || status == 204 || status == 304 || contentLength == 0) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            // 0 tells HttpServer to use chunked encoding when the upstream did not announce a length
+            exchange.sendResponseHeaders(status, Math.max(0, contentLength));
+            try (OutputStream out = exchange.getResponseBody()) {
+                body.transferTo(out);
+            }
+        }
+    }
+
+    private HttpRequest upstreamRequest(HttpExchange exchange) {
+        URI requestUri = exchange.getRequestURI();
+        String pathAndQuery = requestUri.getRawQuery() == null
+                ? requestUri.getRawPath()
+                : requestUri.getRawPath() + "?" + requestUri.getRawQuery();
+
+        HttpRequest.BodyPublisher publisher = requestBody(exchange);
+        HttpRequest.Builder builder =
+                HttpRequest.newBuilder(upstream.resolve(pathAndQuery)).method(exchange.getRequestMethod(), publisher);
+        for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+            if (SKIPPED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                builder.header(header.getKey(), value);
+            }
+        }
+        return builder.build();
+    }
+
+    /** Streams the client's body to the upstream as it is read, so no request body is ever held in memory. */
+    private static HttpRequest.BodyPublisher requestBody(HttpExchange exchange) {
+        Headers headers = exchange.getRequestHeaders();
+        String contentLength = headers.getFirst("Content-Length");
+        if (contentLength != null) {
+            long length = Long.parseLong(contentLength.trim());
+            if (length == 0) {
+                return HttpRequest.BodyPublishers.noBody();
+            }
+            // keep the announced length, so the upstream gets the same framing instead of chunked encoding
+            return HttpRequest.BodyPublishers.fromPublisher(
+                    HttpRequest.BodyPublishers.ofInputStream(exchange::getRequestBody), length);
+        }
+        if (headers.containsKey("Transfer-Encoding")) {
+            return HttpRequest.BodyPublishers.ofInputStream(exchange::getRequestBody);
+        }
+        return HttpRequest.BodyPublishers.noBody();
+    }
+
+    private static void copyHeaders(Map<String, List<String>> from, Headers to) {
+        for (Map.Entry<String, List<String>> header : from.entrySet()) {
+            if (header.getKey().startsWith(":") || SKIPPED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            to.put(header.getKey(), List.copyOf(header.getValue()));
+        }
+    }
+
+    private static String clientAddress(HttpExchange exchange) {
+        InetAddress address = exchange.getRemoteAddress().getAddress();
+        return address != null ? address.getHostAddress() : exchange.getRemoteAddress().getHostString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        URI upstream = URI.create("http://127.0.0.1:9090");
+        String key = "header:X-Api-Key";
+        String algo = "token";
+        long rate = 10;
+        long burst = 10;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--upstream=")) {
+                upstream = URI.create(arg.substring("--upstream=".length()));
+            } else if (arg.startsWith("--key=")) {
+                key = arg.substring("--key=".length());
+            } else if (arg.startsWith("--algo=")) {
+                algo = arg.substring("--algo=".length());
+            } else if (arg.startsWith("--rate=")) {
+                rate = Long.parseLong(arg.substring("--rate=".length()));
+            } else if (arg.startsWith("--burst=")) {
+                burst = Long.parseLong(arg.substring("--burst=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+
+        Function<HttpExchange, String> keyResolver;
+        if ("path".equals(key)) {
+            keyResolver = byPath();
+        } else if (key.startsWith("header:")) {
+            keyResolver = byHeader(key.substring("header:".length()));
+        } else {
+            throw new IllegalArgumentException("Unknown --key=" + key);
+        }
+
+        // the sliding log charges rejected requests too, answering them from the cache would skip that
+        var limiter = new PerKeyRateLimiter<String>(limiterFactory(algo, rate, burst), !"sliding".equals(algo));
+        var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        var gateway = new RateLimitingGateway(address, upstream, limiter, keyResolver);
+        Runtime.getRuntime().addShutdownHook(new Thread(gateway::close));
+        gateway.start();
+        System.out.println("Gateway listening on " + gateway.port() + " -> " + upstream + " (algo=" + algo + ", rate="
+                + rate + "/s, burst=" + burst + ", key=" + key + ")");
+    }
+
+    static Supplier<RateLimiter> limiterFactory(String algo, long ratePerSecond, long burst) {
+        long intervalNanos = Math.max(1, NANOS_PER_SECOND / ratePerSecond);
+        return switch (algo) {
+            case "token" -> () -> new TokenBucket(burst, 1, intervalNanos);
+            case "spacing" -> () -> new SpacingLeakyBucket(burst, intervalNanos);
+            case "fixed" -> () -> new FixedWindowCounter(ratePerSecond, NANOS_PER_SECOND);
+            case "sliding" -> () -> new SlidingWindowLog(ratePerSecond, NANOS_PER_SECOND);
+            default -> throw new IllegalArgumentException("Unknown --algo=" + algo);
+        };
+    }
+}
@@ -0,0 +1,198 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import java.util.Arrays;
+
+/**
+ * Many token buckets kept as parallel {@code long[]} arrays (struct-of-arrays), refilled and charged a whole
+ * batch at a time. With {@code jdk.incubator.vector} on the module path and the SIMD kernel on the classpath (the
+ * build's {@code vector} source set) the batch runs on SIMD lanes, otherwise (or when asked to) it runs the
+ * equivalent scalar loop.
+ *
+ * <p>Differences from {@link TokenBucket} that keep the per-lane math division-free:
+ *
+ * <ul>
+ *   <li>all buckets share one refill period, and refills happen on the absolute grid of
+ *       {@code floorDiv(nowNanos, refillPeriodNanos)} instead of being anchored at each bucket's first call;
+ *   <li>capacity is limited to {@link Integer#MAX_VALUE}, so {@code periods * refillTokens} cannot overflow
+ *       once periods are clamped to capacity.
+ * </ul>
+ *
+ * <p>Only rejected buckets pay for the retry-after computation, which needs a division and stays scalar.
+ */
+public class BulkTokenBuckets {
+    // compiled separately against the incubator module, so nothing else needs it to compile or run
+    private static final Kernel VECTOR_KERNEL = loadVectorKernel();
+
+    private final long refillPeriodNanos;
+    private final long[] capacity;
+    private final long[] refillTokens;
+    private final long[] availableTokens;
+    private final long[] lastRefillPeriod;
+    private final boolean vectorized;
+    private final Kernel kernel;
+    private boolean started;
+
+    public BulkTokenBuckets(long[] capacity, long[] refillTokens, long refillPeriodNanos) {
+        this(capacity, refillTokens, refillPeriodNanos, true);
+    }
+
+    /**
+     * @param useVectorApi {@code false} forces the scalar path; {@code true} uses SIMD when the
+     *     {@code jdk.incubator.vector} module is available and silently falls back otherwise
+     */
+    public BulkTokenBuckets(long[] capacity, long[] refillTokens, long refillPeriodNanos, boolean useVectorApi) {
+        validateInitialParameters(capacity, refillTokens, refillPeriodNanos);
+        this.refillPeriodNanos = refillPeriodNanos;
+        this.capacity = capacity.clone();
+        this.refillTokens = refillTokens.clone();
+        this.availableTokens = capacity.clone();
+        this.lastRefillPeriod = new long[capacity.length];
+        this.vectorized = useVectorApi && VECTOR_KERNEL != null;
+        this.kernel = vectorized ? VECTOR_KERNEL : BulkTokenBuckets::refillAndAcquireScalar;
+    }
+
+    public int size() {
+        return capacity.length;
+    }
+
+    public boolean isVectorized() {
+        return vectorized;
+    }
+
+    /**
+     * Refills every bucket up to {@code nowNanos}, then tries to take {@code permits[i]} tokens from bucket
+     * {@code i} ({@code 0} means "no request, refill only").
+     *
+     * @param retryAfterNanos output, {@code retryAfterNanos[i]} is 0 if bucket {@code i} granted (or was not
+     *     asked), otherwise the minimal delay after which a retry may succeed
+     * @return number of buckets that granted their request
+     */
+    public synchronized int tryAcquire(long nowNanos, long[] permits, long[] retryAfterNanos) {
+        validatePermits(permits, retryAfterNanos);
+        long period = currentPeriod(nowNanos);
+
+        int acquired = kernel.refillAndAcquire(
+                0, size(), period, permits, capacity, refillTokens, availableTokens, lastRefillPeriod, retryAfterNanos);
+
+        // kernels mark rejected buckets with -1, the division-heavy part stays out of the hot loop
+        long periodStartNanos = period * refillPeriodNanos; // floorDiv result times divisor, <= nowNanos
+        for (int i = 0; i < retryAfterNanos.length; i++) {
+            if (retryAfterNanos[i] < 0) {
+                long periodsNeeded = Math.ceilDiv(permits[i] - availableTokens[i], refillTokens[i]);
+                long refillTimeNanos = Utils.saturatedAdd(
+                        periodStartNanos, Utils.saturatedMultiply(periodsNeeded, refillPeriodNanos));
+                retryAfterNanos[i] = refillTimeNanos - nowNanos;
+            }
+        }
+        return acquired;
+    }
+
+    public synchronized long availableTokens(int bucket, long nowNanos) {
+        long period = currentPeriod(nowNanos);
+        long periods = Math.min(Math.max(0, period - lastRefillPeriod[bucket]), capacity[bucket]);
+        return Math.min(capacity[bucket], availableTokens[bucket] + periods * refillTokens[bucket]);
+    }
+
+    private long currentPeriod(long nowNanos) {
+        long period = Math.floorDiv(nowNanos, refillPeriodNanos);
+        if (!started) {
+            // buckets start full, the refill grid starts counting at the first call
+            Arrays.fill(lastRefillPeriod, period);
+            started = true;
+        }
+        return period;
+    }
+
+    static int refillAndAcquireScalar(
+            int from,
+            int to,
+            long period,
+            long[] permits,
+            long[] capacity,
+            long[] refillTokens,
+            long[] availableTokens,
+            long[] lastRefillPeriod,
+            long[] retryAfterNanos) {
+        int acquired = 0;
+        for (int i = from; i < to; i++) {
+            long periods = Math.min(Math.max(0, period - lastRefillPeriod[i]), capacity[i]);
+            long tokens = Math.min(capacity[i], availableTokens[i] + periods * refillTokens[i]);
+            lastRefillPeriod[i] = Math.max(lastRefillPeriod[i], period);
+
+            long requested = permits[i];
+            if (requested == 0) {
+                retryAfterNanos[i] = 0;
+            } else if (requested <= tokens) {
+                tokens -= requested;
+                retryAfterNanos[i] = 0;
+                acquired++;
+            } else {
+                retryAfterNanos[i] = -1;
+            }
+            availableTokens[i] = tokens;
+        }
+        return acquired;
+    }
+
+    private void validatePermits(long[] permits, long[] retryAfterNanos) {
+        if (permits.length != capacity.length || retryAfterNanos.length != capacity.length) {
+            throw new IllegalArgumentException("Permits and retryAfter arrays must match the number of buckets");
+        }
+        for (int i = 0; i < permits.length; i++) {
+            if (permits[i] < 0) {
+                throw new IllegalArgumentException("Permits must not be negative");
+            }
+            if (permits[i] > capacity[i]) {
+                throw new IllegalArgumentException("Permits exceed bucket capacity");
+            }
+        }
+    }
+
+    private static void validateInitialParameters(long[] capacity, long[] refillTokens, long refillPeriodNanos) {
+        if (capacity.length != refillTokens.length) {
+            throw new IllegalArgumentException("Capacity and refill tokens must have the same length");
+        }
+        if (refillPeriodNanos <= 0) {
+            throw new IllegalArgumentException("Refill period must be positive");
+        }
+        for (int i = 0; i < capacity.length; i++) {
+            if (capacity[i] <= 0 || refillTokens[i] <= 0) {
+                throw new IllegalArgumentException("Capacity and refill tokens must be positive");
+            }
+            if (capacity[i] > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Capacity cannot exceed " + Integer.MAX_VALUE);
+            }
+            if (refillTokens[i] > capacity[i]) {
+                throw new IllegalArgumentException("Refill tokens cannot exceed capacity");
+            }
+        }
+    }
+
+    private static Kernel loadVectorKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (Kernel) Class.forName("io.github.vkunitsyn.ratelimiter.VectorTokenBucketKernel")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null; // the vector source set is not on the classpath
+        }
+    }
+
+    @FunctionalInterface
+    interface Kernel {
+        /** Refills and charges buckets {@code [from, to)}, marks rejected ones with -1 in retryAfterNanos. */
+        int refillAndAcquire(
+                int from,
+                int to,
+                long period,
+                long[] permits,
+                long[] capacity,
+                long[] refillTokens,
+                long[] availableTokens,
+                long[] lastRefillPeriod,
+                long[] retryAfterNanos);
+    }
+}
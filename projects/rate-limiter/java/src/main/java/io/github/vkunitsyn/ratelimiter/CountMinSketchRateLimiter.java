@@ -0,0 +1,172 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Keyed fixed-window limiter for unbounded key spaces (IPs, user agents, ...). Instead of per-key state, the
+ * permits each key used in the current window are estimated with a Count-Min Sketch of {@code depth} rows by
+ * {@code width} counters in a single {@code long[]}, so memory stays the same however many keys show up.
+ *
+ * <p>Error bound: the estimate never undercounts, so no key ever gets more than {@code rate} permits per
+ * window. It may overcount: with {@code width >= e / epsilon} and {@code depth >= ln(1 / delta)} the estimate
+ * exceeds a key's real usage by more than {@code epsilon * N} with probability at most {@code delta}, where
+ * {@code N} is the number of permits granted to all keys in the current window. Put differently, a key is
+ * over-limited (rejected before using {@code rate} permits) only once it has used {@code rate - epsilon * N}
+ * permits, except with probability {@code delta}. Counters are updated conservatively (each row is only raised
+ * to {@code estimate + permits}), which keeps the overcount well below the bound in practice.
+ *
+ * <p>The bound assumes keys hash independently. {@link CharSequence} keys are hashed from their characters with a
+ * random per-instance seed, so keys that collide under {@link String#hashCode()} (like {@code "Aa"} and {@code "BB"})
+ * do not share counters, and collisions found against one instance do not carry over to another. Other keys are
+ * placed by their {@code hashCode()} mixed with the seed: keys whose {@code hashCode()} collides share every row, so
+ * such keys must supply a strong hash themselves. The seeded mix is not a keyed cryptographic hash; an attacker who can
+ * observe rejections may still search for colliding keys.
+ */
+public class CountMinSketchRateLimiter<K> implements KeyedRateLimiter<K> {
+    private final long rate;
+    private final long windowSizeNanos;
+    private final int width;
+    private final long keySeed;
+    private final long[] rowSeeds;
+    private final long[] counters;
+    private long lastWindowTimeNanos;
+
+    public CountMinSketchRateLimiter(long rate, long windowSizeNanos, int width, int depth) {
+        validateInitialParameters(rate, windowSizeNanos, width, depth);
+        this.rate = rate;
+        this.windowSizeNanos = windowSizeNanos;
+        this.width = width;
+        var seeds = new SplittableRandom(new SecureRandom().nextLong());
+        this.keySeed = seeds.nextLong();
+        this.rowSeeds = seeds.longs(depth).toArray();
+        this.counters = new long[Math.multiplyExact(width, depth)];
+        this.lastWindowTimeNanos = Long.MIN_VALUE;
+    }
+
+    /**
+     * Sizes the sketch from the error bound: overcount of at most {@code epsilon * N} with probability at
+     * least {@code 1 - delta}, see the class documentation.
+     */
+    public static <K> CountMinSketchRateLimiter<K> withErrorBound(
+            long rate, long windowSizeNanos, double epsilon, double delta) {
+        if (!(epsilon > 0 && epsilon < 1) || !(delta > 0 && delta < 1)) {
+            throw new IllegalArgumentException("Epsilon, delta must be in (0, 1)");
+        }
+        int width = (int) Math.ceil(Math.E / epsilon);
+        int depth = (int) Math.ceil(Math.log(1 / delta));
+        return new CountMinSketchRateLimiter<>(rate, windowSizeNanos, width, depth);
+    }
+
+    @Override
+    public synchronized AcquireResult tryAcquire(K key, long nowNanos, long permits) {
+        validatePermits(permits);
+        recalculateWindow(nowNanos);
+
+        long hash = hash(key);
+        long estimate = estimate(hash);
+        if (estimate + permits > rate) {
+            return new AcquireResult.Rejected(retryAfterNanosInternal(nowNanos));
+        }
+
+        long updated = estimate + permits;
+        for (int row = 0; row < rowSeeds.length; row++) {
+            int index = index(hash, row);
+            counters[index] = Math.max(counters[index], updated);
+        }
+        return new AcquireResult.Acquired(permits);
+    }
+
+    @Override
+    public synchronized long availableTokens(K key, long nowNanos) {
+        return Math.max(0, rate - readEstimate(key, nowNanos));
+    }
+
+    @Override
+    public synchronized long retryAfterNanos(K key, long nowNanos, long permits) {
+        validatePermits(permits);
+        if (readEstimate(key, nowNanos) + permits <= rate) {
+            return 0;
+        }
+        return retryAfterNanosInternal(nowNanos);
+    }
+
+    /** Memory used by the counters, independent of the number of keys. */
+    public int counterCount() {
+        return counters.length;
+    }
+
+    /** 64 bits of the key, from its characters for {@link CharSequence} keys, seeded per instance. */
+    private long hash(K key) {
+        if (!(key instanceof CharSequence chars)) {
+            return key.hashCode() ^ keySeed;
+        }
+        long h = keySeed ^ chars.length();
+        for (int i = 0; i < chars.length(); i++) {
+            h = (h ^ chars.charAt(i)) * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 29;
+        }
+        return h;
+    }
+
+    /** Like {@link #estimate(long)}, but a window that has rolled over reads as empty without being reset. */
+    private long readEstimate(K key, long nowNanos) {
+        return windowStartNanos(nowNanos) > lastWindowTimeNanos ? 0 : estimate(hash(key));
+    }
+
+    private long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < rowSeeds.length; row++) {
+            estimate = Math.min(estimate, counters[index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    private int index(long hash, int row) {
+        // murmur3 fmix64 of the key hash mixed with a per-row seed: independent-looking rows from one hash
+        long h = hash ^ rowSeeds[row];
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return row * width + (int) Long.remainderUnsigned(h, width);
+    }
+
+    private long retryAfterNanosInternal(long nowNanos) {
+        long nextWindowTimeNanos = Utils.saturatedAdd(lastWindowTimeNanos, windowSizeNanos);
+        return Math.max(0, nextWindowTimeNanos - nowNanos);
+    }
+
+    private void validatePermits(long permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Permits must be positive");
+        }
+        if (permits > rate) {
+            throw new IllegalArgumentException("Permits exceed allowed rate");
+        }
+    }
+
+    private long windowStartNanos(long nowNanos) {
+        return nowNanos - Math.floorMod(nowNanos, windowSizeNanos);
+    }
+
+    private void recalculateWindow(long nowNanos) {
+        long currentWindowStartNanos = windowStartNanos(nowNanos);
+        if (currentWindowStartNanos > lastWindowTimeNanos) {
+            Arrays.fill(counters, 0);
+            lastWindowTimeNanos = currentWindowStartNanos;
+        }
+    }
+
+    private static void validateInitialParameters(long rate, long windowSizeNanos, int width, int depth) {
+        if (rate <= 0 || windowSizeNanos <= 0) {
+            throw new IllegalArgumentException("Rate, window size must be positive");
+        }
+        if (width <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Width, depth must be positive");
+        }
+    }
+}
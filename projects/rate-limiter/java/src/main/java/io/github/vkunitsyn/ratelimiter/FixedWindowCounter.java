@@ -1,10 +1,18 @@
 package io.github.vkunitsyn.ratelimiter;
 
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * At most {@code rate} permits per aligned window of {@code windowSizeNanos}.
+ *
+ * <p>Acquisitions take a write lock, reads compute the current window's view optimistically without locking.
+ */
 public class FixedWindowCounter implements RateLimiter {
     private final long rate;
     private final long windowSizeNanos;
     private long lastWindowTimeNanos;
     private long remainingPermitsInWindow;
+    private final StampedLock lock = new StampedLock();
 
     public FixedWindowCounter(long rate, long windowSizeNanos) {
         validateInitialParameters(rate, windowSizeNanos);
@@ -14,35 +22,67 @@ public FixedWindowCounter(long rate, long windowSizeNanos) {
     }
 
     @Override
-    public synchronized AcquireResult tryAcquire(long nowNanos, long permits) {
+    public AcquireResult tryAcquire(long nowNanos, long permits) {
         validatePermits(permits);
-        recalculateWindowAndPermits(nowNanos);
-        if (remainingPermitsInWindow >= permits) {
-            remainingPermitsInWindow -= permits;
-            return new AcquireResult.Acquired(permits);
+        long stamp = lock.writeLock();
+        try {
+            recalculateWindowAndPermits(nowNanos);
+            if (remainingPermitsInWindow >= permits) {
+                remainingPermitsInWindow -= permits;
+                return new AcquireResult.Acquired(permits);
+            }
+            return new AcquireResult.Rejected(
+                    retryAfterNanosInternal(nowNanos, permits, lastWindowTimeNanos, remainingPermitsInWindow));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public AcquireResult tryAcquireUpTo(long nowNanos, long maxPermits, long minPermits) {
+        validatePermits(minPermits);
+        Utils.validatePermitRange(maxPermits, minPermits);
+        long stamp = lock.writeLock();
+        try {
+            recalculateWindowAndPermits(nowNanos);
+            long permits = Math.min(maxPermits, remainingPermitsInWindow);
+            if (permits >= minPermits) {
+                remainingPermitsInWindow -= permits;
+                return new AcquireResult.Acquired(permits);
+            }
+            return new AcquireResult.Rejected(
+                    retryAfterNanosInternal(nowNanos, minPermits, lastWindowTimeNanos, remainingPermitsInWindow));
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        return new AcquireResult.Rejected(retryAfterNanosInternal(nowNanos, permits));
     }
 
     @Override
-    public synchronized long availableTokens(long nowNanos) {
-        recalculateWindowAndPermits(nowNanos);
-        return remainingPermitsInWindow;
+    public long availableTokens(long nowNanos) {
+        return Utils.readOptimistically(lock, () -> {
+            long windowTimeNanos = lastWindowTimeNanos;
+            boolean sameWindow = windowTimeNanos == currentWindowTimeNanos(nowNanos, windowTimeNanos);
+            return sameWindow ? remainingPermitsInWindow : rate;
+        });
     }
 
     @Override
-    public synchronized long retryAfterNanos(long nowNanos, long permits) {
+    public long retryAfterNanos(long nowNanos, long permits) {
         validatePermits(permits);
-        recalculateWindowAndPermits(nowNanos);
-        return retryAfterNanosInternal(nowNanos, permits);
+        return Utils.readOptimistically(lock, () -> {
+            long windowTimeNanos = lastWindowTimeNanos;
+            long currentWindowTimeNanos = currentWindowTimeNanos(nowNanos, windowTimeNanos);
+            long remainingPermits = windowTimeNanos == currentWindowTimeNanos ? remainingPermitsInWindow : rate;
+            return retryAfterNanosInternal(nowNanos, permits, currentWindowTimeNanos, remainingPermits);
+        });
     }
 
-    private long retryAfterNanosInternal(long nowNanos, long permits) {
-        if (remainingPermitsInWindow >= permits) {
+    private long retryAfterNanosInternal(long nowNanos, long permits, long windowTimeNanos, long remainingPermits) {
+        if (remainingPermits >= permits) {
             return 0;
         }
 
-        long nextWindowTimeNanos = Utils.saturatedAdd(lastWindowTimeNanos, windowSizeNanos);
+        long nextWindowTimeNanos = Utils.saturatedAdd(windowTimeNanos, windowSizeNanos);
         if (nextWindowTimeNanos <= nowNanos) {
             return 0;
         }
@@ -61,21 +101,20 @@ private void validatePermits(long permits) {
     }
 
     private void recalculateWindowAndPermits(long nowNanos) {
-        if (lastWindowTimeNanos == Long.MIN_VALUE) {
+        long currentWindowTimeNanos = currentWindowTimeNanos(nowNanos, lastWindowTimeNanos);
+        if (currentWindowTimeNanos != lastWindowTimeNanos) {
             remainingPermitsInWindow = rate;
-            lastWindowTimeNanos = nowNanos - Math.floorMod(nowNanos, windowSizeNanos);
-            return;
+            lastWindowTimeNanos = currentWindowTimeNanos;
         }
+    }
 
-        if (nowNanos <= lastWindowTimeNanos) {
-            return;
+    /** Start of the window {@code nowNanos} counts against, a stale {@code nowNanos} keeps the last window. */
+    private long currentWindowTimeNanos(long nowNanos, long lastWindowTimeNanos) {
+        if (lastWindowTimeNanos != Long.MIN_VALUE && nowNanos <= lastWindowTimeNanos) {
+            return lastWindowTimeNanos;
         }
-
         long currentWindowStartNanos = nowNanos - Math.floorMod(nowNanos, windowSizeNanos);
-        if (currentWindowStartNanos > lastWindowTimeNanos) {
-            remainingPermitsInWindow = rate;
-            lastWindowTimeNanos = currentWindowStartNanos;
-        }
+        return Math.max(currentWindowStartNanos, lastWindowTimeNanos);
     }
 
     private static void validateInitialParameters(long rate, long windowSizeNanos) {
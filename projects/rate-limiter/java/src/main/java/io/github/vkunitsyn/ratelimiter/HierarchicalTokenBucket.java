@@ -0,0 +1,178 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A tree of token buckets with Linux HTB semantics. The root is the shared pool; every other node has a guaranteed
+ * rate it can always use and a ceiling rate up to which it may borrow idle capacity from its ancestors. All rates are
+ * tokens per the tree's refill period.
+ *
+ * <p>Each node is a {@link RateLimiter}. An acquisition makes one pass from the node up the tree: every node passed
+ * must be under its ceiling, and the first node whose guaranteed bucket has room lends the permits (the node itself
+ * when it is within its guarantee). The permits are then charged to the lender's and every ancestor's guaranteed
+ * bucket and to every ceiling on the path, so idle capacity seen by borrowers stays accurate.
+ *
+ * <p>Locking is per node and only covers the nodes a decision reads: from the acquiring node up to the lender, taken
+ * bottom-up, so a tenant within its guarantee locks nothing but itself. Charges above the lender are atomic per bucket
+ * but unconditional; guaranteed traffic may therefore put an ancestor briefly into debt (at most its burst), which
+ * delays later borrowing, never a guarantee.
+ */
+public class HierarchicalTokenBucket {
+    private final long refillPeriodNanos;
+    private final Node root;
+
+    /** @param rateTokens tokens added to the pool every {@code refillPeriodNanos}, up to {@code burst} */
+    public HierarchicalTokenBucket(long rateTokens, long burst, long refillPeriodNanos) {
+        if (rateTokens <= 0 || burst <= 0 || refillPeriodNanos <= 0) {
+            throw new IllegalArgumentException("Rate, burst, refill period must be positive");
+        }
+        if (rateTokens > burst) {
+            throw new IllegalArgumentException("Rate cannot exceed burst");
+        }
+        this.refillPeriodNanos = refillPeriodNanos;
+        this.root = new Node(null, rateTokens, rateTokens, burst);
+    }
+
+    public Node root() {
+        return root;
+    }
+
+    public final class Node implements RateLimiter {
+        private final Node parent;
+        private final long rateTokens;
+        private final long ceilTokens;
+        private final long burst;
+        // guaranteed tokens, at most one period's worth, or the whole pool for the root
+        private final long rateCapacity;
+        private final TokenBucket rate;
+        private final TokenBucket ceil;
+        private final ReentrantLock lock = new ReentrantLock();
+        private long childrenRateTokens;
+
+        private Node(Node parent, long rateTokens, long ceilTokens, long burst) {
+            this.parent = parent;
+            this.rateTokens = rateTokens;
+            this.ceilTokens = ceilTokens;
+            this.burst = burst;
+            this.rateCapacity = parent == null ? burst : rateTokens;
+            this.rate = new TokenBucket(rateCapacity, rateTokens, refillPeriodNanos);
+            // the root's ceiling is its rate
+            this.ceil = parent == null ? null : new TokenBucket(burst, ceilTokens, refillPeriodNanos);
+        }
+
+        /**
+         * @param rateTokens guaranteed tokens per period; the guarantees of all children must fit into this node's
+         * @param ceilTokens tokens per period the child may reach by borrowing, at most this node's ceiling
+         * @param burst most tokens the child may take at once, at most this node's burst
+         */
+        public Node addChild(long rateTokens, long ceilTokens, long burst) {
+            if (rateTokens <= 0 || ceilTokens < rateTokens || burst < ceilTokens) {
+                throw new IllegalArgumentException("Rate must be positive and ceiling between rate and burst");
+            }
+            if (ceilTokens > this.ceilTokens || burst > this.burst) {
+                throw new IllegalArgumentException("Child ceiling and burst cannot exceed its parent's");
+            }
+            synchronized (this) {
+                if (childrenRateTokens + rateTokens > this.rateTokens) {
+                    throw new IllegalArgumentException("Guaranteed rates of children cannot exceed the parent's");
+                }
+                childrenRateTokens += rateTokens;
+            }
+            return new Node(this, rateTokens, ceilTokens, burst);
+        }
+
+        @Override
+        public AcquireResult tryAcquire(long nowNanos, long permits) {
+            validatePermits(permits);
+            Node lender = null;
+            Node lastLocked = null;
+            try {
+                for (Node node = this; node != null; node = node.parent) {
+                    node.lock.lock();
+                    lastLocked = node;
+                    if (node.ceil != null && node.ceil.availableTokens(nowNanos) < permits) {
+                        break;
+                    }
+                    if (node.rate.availableTokens(nowNanos) >= permits) {
+                        lender = node;
+                        break;
+                    }
+                }
+                if (lender != null) {
+                    // guarantees below the lender are not charged, they were not used
+                    boolean lent = false;
+                    for (Node node = this; node != null; node = node.parent) {
+                        lent |= node == lender;
+                        if (lent) {
+                            node.rate.charge(nowNanos, permits);
+                        }
+                        if (node.ceil != null) {
+                            node.ceil.charge(nowNanos, permits);
+                        }
+                    }
+                }
+            } finally {
+                if (lastLocked != null) {
+                    for (Node node = this; ; node = node.parent) {
+                        node.lock.unlock();
+                        if (node == lastLocked) {
+                            break;
+                        }
+                    }
+                }
+            }
+            if (lender == null) {
+                return new AcquireResult.Rejected(retryAfterNanos(nowNanos, permits));
+            }
+            return new AcquireResult.Acquired(permits);
+        }
+
+        /** The most any lender on the path could grant, within every ceiling below it. */
+        @Override
+        public long availableTokens(long nowNanos) {
+            long available = 0;
+            long ceilAvailable = Long.MAX_VALUE;
+            for (Node node = this; node != null; node = node.parent) {
+                if (node.ceil != null) {
+                    ceilAvailable = Math.min(ceilAvailable, node.ceil.availableTokens(nowNanos));
+                }
+                available = Math.max(available, Math.min(ceilAvailable, node.rate.availableTokens(nowNanos)));
+            }
+            return available;
+        }
+
+        /** The earliest time any lender on the path has room while every ceiling below it has too. */
+        @Override
+        public long retryAfterNanos(long nowNanos, long permits) {
+            validatePermits(permits);
+            long retryAfterNanos = Long.MAX_VALUE;
+            long ceilRetryAfterNanos = 0;
+            for (Node node = this; node != null; node = node.parent) {
+                if (node.ceil != null) {
+                    ceilRetryAfterNanos = Math.max(ceilRetryAfterNanos, node.ceil.retryAfterNanos(nowNanos, permits));
+                }
+                long rateRetryAfterNanos = node.rateRetryAfterNanos(nowNanos, permits);
+                retryAfterNanos = Math.min(retryAfterNanos, Math.max(ceilRetryAfterNanos, rateRetryAfterNanos));
+            }
+            return retryAfterNanos;
+        }
+
+        public Node parent() {
+            return parent;
+        }
+
+        /** A guaranteed bucket holds one period's worth, more than that can only come from higher up. */
+        private long rateRetryAfterNanos(long nowNanos, long permits) {
+            return permits > rateCapacity ? Long.MAX_VALUE : rate.retryAfterNanos(nowNanos, permits);
+        }
+
+        private void validatePermits(long permits) {
+            if (permits <= 0) {
+                throw new IllegalArgumentException("Permits must be positive");
+            }
+            if (permits > burst) {
+                throw new IllegalArgumentException("Permits exceed bucket capacity");
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link FixedWindowCounter} semantics for many keys, without a limiter object per key: all keys share the same
+ * aligned windows, so each key only keeps one {@code long} holding the permits it used, tagged with the window they
+ * were used in (low 32 bits of the window index in the high half, used permits in the low half). With the map entry
+ * and the {@link AtomicLong} around it that is still some 64 bytes per key.
+ *
+ * <p>Rollover is global and lazy: the current window index is shared, and advancing it makes every counter tagged
+ * with an older window read as unused at once, with no sweep and no write to idle keys. A key is only rewritten by its
+ * next acquisition, which is a single compare-and-set on its counter. Only acquisitions advance the shared window,
+ * reads never change state. Stale keys keep their entry until {@link #evictStale(long)} removes them; call it
+ * periodically when keys come from clients.
+ *
+ * <p>The shared window never moves back, so a stale {@code nowNanos} counts against the latest window any key has
+ * seen. Tags wrap after 2^32 windows, so a tag is only taken as ahead of the window when the shared window really is
+ * that far ahead, anything else is stale. A key idle for a multiple of 2^32 windows, give or take the windows a racing
+ * acquisition moved the shared window, would still read its old usage back: that is about 50 days of idleness for
+ * millisecond windows, 136 years for one-second windows.
+ */
+public class KeyedFixedWindowCounter<K> implements KeyedRateLimiter<K> {
+    private static final long USED_MASK = 0xFFFF_FFFFL;
+    // an evicted counter, no acquisition can reach this many used permits
+    private static final long EVICTED = -1L;
+
+    private final long rate;
+    private final long windowSizeNanos;
+    private final ConcurrentHashMap<K, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final AtomicLong latestWindow = new AtomicLong(Long.MIN_VALUE);
+
+    /** @param rate permits per key and window, at most {@code 2^32 - 2} */
+    public KeyedFixedWindowCounter(long rate, long windowSizeNanos) {
+        if (rate <= 0 || windowSizeNanos <= 0) {
+            throw new IllegalArgumentException("Rate, window size must be positive");
+        }
+        if (rate >= USED_MASK) {
+            throw new IllegalArgumentException("Rate cannot exceed 2^32 - 2");
+        }
+        this.rate = rate;
+        this.windowSizeNanos = windowSizeNanos;
+    }
+
+    @Override
+    public AcquireResult tryAcquire(K key, long nowNanos, long permits) {
+        validatePermits(permits);
+        long window = currentWindow(nowNanos);
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> new AtomicLong(pack(window, 0)));
+        }
+
+        while (true) {
+            long packed = counter.get();
+            if (packed == EVICTED) {
+                // evicted under our feet: continue on the counter that replaces it
+                counter = counters.compute(
+                        key, (k, c) -> c == null || c.get() == EVICTED ? new AtomicLong(pack(window, 0)) : c);
+                continue;
+            }
+            int ahead = windowsAhead(packed, window);
+            long counterWindow = ahead > 0 ? window + ahead : window;
+            long used = ahead >= 0 ? packed & USED_MASK : 0;
+            if (used + permits > rate) {
+                return new AcquireResult.Rejected(retryAfterNanosInternal(nowNanos, counterWindow));
+            }
+            if (counter.compareAndSet(packed, pack(counterWindow, used + permits))) {
+                return new AcquireResult.Acquired(permits);
+            }
+        }
+    }
+
+    @Override
+    public long availableTokens(K key, long nowNanos) {
+        return rate - used(key, readWindow(nowNanos));
+    }
+
+    @Override
+    public long retryAfterNanos(K key, long nowNanos, long permits) {
+        validatePermits(permits);
+        long window = readWindow(nowNanos);
+        if (used(key, window) + permits <= rate) {
+            return 0;
+        }
+        return retryAfterNanosInternal(nowNanos, window);
+    }
+
+    /** Keys that acquired and were not evicted since, stale ones included. */
+    public int keyCount() {
+        return counters.size();
+    }
+
+    /**
+     * Removes every key that used nothing in the window of {@code nowNanos} (or a later one already reached), and
+     * returns how many were removed. Such keys read as unused anyway, so eviction changes no decision.
+     */
+    public int evictStale(long nowNanos) {
+        long window = readWindow(nowNanos);
+        int evicted = 0;
+        for (var entry : counters.entrySet()) {
+            AtomicLong counter = entry.getValue();
+            long packed = counter.get();
+            // the tombstone makes an acquisition racing the removal start over on a new counter, instead of being lost
+            if (packed != EVICTED && windowsAhead(packed, window) < 0 && counter.compareAndSet(packed, EVICTED)) {
+                counters.remove(entry.getKey(), counter);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private long used(K key, long window) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            return 0;
+        }
+        long packed = counter.get();
+        return packed != EVICTED && windowsAhead(packed, window) >= 0 ? packed & USED_MASK : 0;
+    }
+
+    /**
+     * How many windows the counter's tag is ahead of {@code window}: negative for a stale counter, positive when a
+     * racing acquisition already moved the shared window past {@code window}. Tags are 32-bit serial numbers, so a tag
+     * further ahead than the shared window is one that wrapped around and counts as stale.
+     */
+    private int windowsAhead(long packed, long window) {
+        int ahead = (int) (packed >>> 32) - (int) window;
+        return ahead > 0 && ahead > latestWindow.get() - window ? -1 : ahead;
+    }
+
+    /** The window a read at {@code nowNanos} sees, without advancing the shared window. */
+    private long readWindow(long nowNanos) {
+        return Math.max(latestWindow.get(), Math.floorDiv(nowNanos, windowSizeNanos));
+    }
+
+    /** Index of the window {@code nowNanos} counts against, advancing the shared window if it has rolled over. */
+    private long currentWindow(long nowNanos) {
+        long window = Math.floorDiv(nowNanos, windowSizeNanos);
+        long latest = latestWindow.get();
+        if (window <= latest) {
+            return latest;
+        }
+        return latestWindow.accumulateAndGet(window, Math::max);
+    }
+
+    private long retryAfterNanosInternal(long nowNanos, long window) {
+        long nextWindowTimeNanos = Utils.saturatedAdd(window * windowSizeNanos, windowSizeNanos);
+        return Math.max(0, nextWindowTimeNanos - nowNanos);
+    }
+
+    private void validatePermits(long permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Permits must be positive");
+        }
+        if (permits > rate) {
+            throw new IllegalArgumentException("Permits exceed allowed rate");
+        }
+    }
+
+    private static long pack(long window, long used) {
+        return (window << 32) | used;
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+
+/**
+ * Same contract as {@link RateLimiter}, but every call is scoped to a key (client id, IP, path, ...).
+ */
+public interface KeyedRateLimiter<K> {
+    AcquireResult tryAcquire(K key, long nowNanos, long permits);
+
+    long availableTokens(K key, long nowNanos);
+
+    long retryAfterNanos(K key, long nowNanos, long permits);
+
+    default AcquireResult tryAcquire(K key, long permits) {
+        return tryAcquire(key, System.nanoTime(), permits);
+    }
+
+    default long availableTokens(K key) {
+        return availableTokens(key, System.nanoTime());
+    }
+
+    default long retryAfterNanos(K key, long permits) {
+        return retryAfterNanos(key, System.nanoTime(), permits);
+    }
+}
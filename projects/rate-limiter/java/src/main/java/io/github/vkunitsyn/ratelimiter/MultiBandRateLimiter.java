@@ -0,0 +1,186 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Several fixed-window limits stacked on one key, e.g. 20 per second and 1000 per minute and 50k per day: a
+ * request passes only if every band has room, and then counts against all of them.
+ *
+ * <p>All bands live in one {@code long[]} of (window start, remaining permits) pairs guarded by one lock, so the
+ * check and the consumption are a single atomic update: no band is charged for a request another band rejects.
+ * Windows are aligned like {@link FixedWindowCounter}'s. Retry-after is the time until every band that lacks room
+ * has rolled over, i.e. the binding band's.
+ */
+public class MultiBandRateLimiter implements RateLimiter {
+    private final long[] rates;
+    private final long[] windowSizesNanos;
+    // [2 * band] window start, [2 * band + 1] remaining permits
+    private final long[] state;
+    private final long maxPermits;
+    private final StampedLock lock = new StampedLock();
+
+    public MultiBandRateLimiter(Band... bands) {
+        if (bands.length == 0) {
+            throw new IllegalArgumentException("At least one band is required");
+        }
+        this.rates = new long[bands.length];
+        this.windowSizesNanos = new long[bands.length];
+        this.state = new long[2 * bands.length];
+        long maxPermits = Long.MAX_VALUE;
+        for (int i = 0; i < bands.length; i++) {
+            rates[i] = bands[i].rate();
+            windowSizesNanos[i] = bands[i].windowSizeNanos();
+            state[2 * i] = Long.MIN_VALUE;
+            maxPermits = Math.min(maxPermits, rates[i]);
+        }
+        this.maxPermits = maxPermits;
+    }
+
+    @Override
+    public AcquireResult tryAcquire(long nowNanos, long permits) {
+        validatePermits(permits);
+        long stamp = lock.writeLock();
+        try {
+            if (rollWindows(nowNanos) < permits) {
+                return new AcquireResult.Rejected(rolledRetryAfterNanos(nowNanos, permits));
+            }
+            consume(permits);
+            return new AcquireResult.Acquired(permits);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public AcquireResult tryAcquireUpTo(long nowNanos, long maxPermits, long minPermits) {
+        validatePermits(minPermits);
+        Utils.validatePermitRange(maxPermits, minPermits);
+        long stamp = lock.writeLock();
+        try {
+            long permits = Math.min(maxPermits, rollWindows(nowNanos));
+            if (permits < minPermits) {
+                return new AcquireResult.Rejected(rolledRetryAfterNanos(nowNanos, minPermits));
+            }
+            consume(permits);
+            return new AcquireResult.Acquired(permits);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public long availableTokens(long nowNanos) {
+        return Utils.readOptimistically(lock, () -> {
+            long available = Long.MAX_VALUE;
+            for (int i = 0; i < rates.length; i++) {
+                available = Math.min(available, remainingPermits(i, nowNanos));
+            }
+            return available;
+        });
+    }
+
+    @Override
+    public long retryAfterNanos(long nowNanos, long permits) {
+        validatePermits(permits);
+        return Utils.readOptimistically(lock, () -> {
+            long retryAfterNanos = 0;
+            for (int i = 0; i < rates.length; i++) {
+                retryAfterNanos = Math.max(retryAfterNanos, bandRetryAfterNanos(i, nowNanos, permits));
+            }
+            return retryAfterNanos;
+        });
+    }
+
+    /** Index of the band that keeps {@code permits} from passing the longest, -1 if they would pass now. */
+    public int bindingBand(long nowNanos, long permits) {
+        validatePermits(permits);
+        return (int) Utils.readOptimistically(lock, () -> {
+            int binding = -1;
+            long longestWaitNanos = 0;
+            for (int i = 0; i < rates.length; i++) {
+                long waitNanos = bandRetryAfterNanos(i, nowNanos, permits);
+                if (waitNanos > longestWaitNanos) {
+                    binding = i;
+                    longestWaitNanos = waitNanos;
+                }
+            }
+            return binding;
+        });
+    }
+
+    /** Rolls every band to {@code nowNanos}, under the write lock; returns the permits all bands have room for. */
+    private long rollWindows(long nowNanos) {
+        long available = Long.MAX_VALUE;
+        for (int i = 0; i < rates.length; i++) {
+            long windowTimeNanos = currentWindowTimeNanos(i, nowNanos, state[2 * i]);
+            if (windowTimeNanos != state[2 * i]) {
+                state[2 * i] = windowTimeNanos;
+                state[2 * i + 1] = rates[i];
+            }
+            available = Math.min(available, state[2 * i + 1]);
+        }
+        return available;
+    }
+
+    /** The state is rolled to {@code nowNanos}: each band without room frees up at the end of its window. */
+    private long rolledRetryAfterNanos(long nowNanos, long permits) {
+        long retryAfterNanos = 0;
+        for (int i = 0; i < rates.length; i++) {
+            if (state[2 * i + 1] < permits) {
+                long nextWindowTimeNanos = Utils.saturatedAdd(state[2 * i], windowSizesNanos[i]);
+                retryAfterNanos = Math.max(retryAfterNanos, nextWindowTimeNanos - nowNanos);
+            }
+        }
+        return retryAfterNanos;
+    }
+
+    private void consume(long permits) {
+        for (int i = 0; i < rates.length; i++) {
+            state[2 * i + 1] -= permits;
+        }
+    }
+
+    private long bandRetryAfterNanos(int band, long nowNanos, long permits) {
+        if (remainingPermits(band, nowNanos) >= permits) {
+            return 0;
+        }
+        long windowTimeNanos = currentWindowTimeNanos(band, nowNanos, state[2 * band]);
+        long nextWindowTimeNanos = Utils.saturatedAdd(windowTimeNanos, windowSizesNanos[band]);
+        return Math.max(0, nextWindowTimeNanos - nowNanos);
+    }
+
+    private long remainingPermits(int band, long nowNanos) {
+        long windowTimeNanos = state[2 * band];
+        boolean sameWindow = windowTimeNanos == currentWindowTimeNanos(band, nowNanos, windowTimeNanos);
+        return sameWindow ? state[2 * band + 1] : rates[band];
+    }
+
+    /** Same alignment as {@link FixedWindowCounter}: a stale {@code nowNanos} keeps the last window. */
+    private long currentWindowTimeNanos(int band, long nowNanos, long lastWindowTimeNanos) {
+        // still inside the last window is the common case, and needs no division
+        if (lastWindowTimeNanos != Long.MIN_VALUE
+                && nowNanos < Utils.saturatedAdd(lastWindowTimeNanos, windowSizesNanos[band])) {
+            return lastWindowTimeNanos;
+        }
+        long currentWindowStartNanos = nowNanos - Math.floorMod(nowNanos, windowSizesNanos[band]);
+        return Math.max(currentWindowStartNanos, lastWindowTimeNanos);
+    }
+
+    private void validatePermits(long permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Permits must be positive");
+        }
+        if (permits > maxPermits) {
+            throw new IllegalArgumentException("Permits exceed allowed rate");
+        }
+    }
+
+    /** At most {@code rate} permits per aligned window of {@code windowSizeNanos}. */
+    public record Band(long rate, long windowSizeNanos) {
+        public Band {
+            if (rate <= 0 || windowSizeNanos <= 0) {
+                throw new IllegalArgumentException("Rate, window size must be positive");
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps one independent limiter per key, created lazily from the factory on the first acquire.
+ *
+ * <p>Reads for a key that never acquired anything are answered by a pristine limiter instead of
+ * creating state, so probing unknown keys does not grow the map. Every acquiring key does get an entry, which stays
+ * until {@link #evictIdle(long)} finds its limiter back at a pristine one's capacity. Call it periodically when keys
+ * come from clients: without it an unbounded key space (IPs, headers, paths) grows the map without bound.
+ *
+ * <p>With {@code cacheRejections}, the last rejection is remembered per key: once a key is rejected for {@code p}
+ * permits with retry-after {@code T}, further requests for exactly {@code p} permits before {@code T} are rejected
+ * from that record, a single volatile read, without touching the limiter or its lock. Nothing but time gives a key
+ * permits back, so such a request would be rejected anyway; any grant to the key drops the record, since it moves the
+ * retry-after further out. Only enable it for limiters whose rejections leave no trace: {@link SlidingWindowLog} logs
+ * rejected requests too, and skipping the limiter would skip that charge.
+ */
+public class PerKeyRateLimiter<K> implements KeyedRateLimiter<K> {
+    private final Supplier<? extends RateLimiter> factory;
+    private final RateLimiter pristine;
+    private final ConcurrentHashMap<K, Entry> limiters;
+    private final boolean cacheRejections;
+
+    public PerKeyRateLimiter(Supplier<? extends RateLimiter> factory) {
+        this(factory, false);
+    }
+
+    public PerKeyRateLimiter(Supplier<? extends RateLimiter> factory, boolean cacheRejections) {
+        this.factory = Objects.requireNonNull(factory, "factory");
+        this.cacheRejections = cacheRejections;
+        this.pristine = factory.get();
+        this.limiters = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public AcquireResult tryAcquire(K key, long nowNanos, long permits) {
+        Entry entry = limiters.get(key);
+        if (entry == null) {
+            entry = limiters.computeIfAbsent(key, k -> new Entry(factory.get()));
+        }
+        if (!cacheRejections) {
+            return entry.limiter.tryAcquire(nowNanos, permits);
+        }
+        Denial denial = entry.denial;
+        if (denial != null && nowNanos < denial.untilNanos() && permits == denial.permits()) {
+            return new AcquireResult.Rejected(denial.untilNanos() - nowNanos);
+        }
+
+        AcquireResult result = entry.limiter.tryAcquire(nowNanos, permits);
+        if (result.isAcquired()) {
+            if (denial != null) {
+                entry.denial = null;
+            }
+        } else if (result.retryAfterNanos() > 0) {
+            entry.denial = new Denial(Utils.saturatedAdd(nowNanos, result.retryAfterNanos()), permits);
+        }
+        return result;
+    }
+
+    @Override
+    public long availableTokens(K key, long nowNanos) {
+        return limiterOrPristine(key).availableTokens(nowNanos);
+    }
+
+    @Override
+    public long retryAfterNanos(K key, long nowNanos, long permits) {
+        return limiterOrPristine(key).retryAfterNanos(nowNanos, permits);
+    }
+
+    public int size() {
+        return limiters.size();
+    }
+
+    /**
+     * Removes every key whose limiter has as many tokens available as a new one, i.e. that a new limiter would decide
+     * for the same way, and returns how many were removed. An acquisition racing the removal of its key is forgotten,
+     * so an evicted key can get up to the permits of its in-flight calls on top of a full limit.
+     */
+    public int evictIdle(long nowNanos) {
+        long pristineTokens = pristine.availableTokens(nowNanos);
+        int evicted = 0;
+        for (var entry : limiters.entrySet()) {
+            if (entry.getValue().limiter.availableTokens(nowNanos) >= pristineTokens
+                    && limiters.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private RateLimiter limiterOrPristine(K key) {
+        Entry entry = limiters.get(key);
+        return entry != null ? entry.limiter : pristine;
+    }
+
+    private static final class Entry {
+        final RateLimiter limiter;
+        // the last rejection, replaced as a whole so that readers never see half of one
+        volatile Denial denial;
+
+        Entry(RateLimiter limiter) {
+            this.limiter = limiter;
+        }
+    }
+
+    /** Requests for exactly {@code permits} are rejected until {@code untilNanos}. */
+    private record Denial(long untilNanos, long permits) {}
+}
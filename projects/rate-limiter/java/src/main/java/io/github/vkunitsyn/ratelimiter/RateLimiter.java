@@ -1,5 +1,7 @@
 package io.github.vkunitsyn.ratelimiter;
 
+import java.util.concurrent.TimeUnit;
+
 public interface RateLimiter {
     AcquireResult tryAcquire(long nowNanos, long permits);
 
@@ -7,16 +9,65 @@ public interface RateLimiter {
 
     long retryAfterNanos(long nowNanos, long permits);
 
+    /**
+     * Takes as many permits as are available right now, up to {@code maxPermits}, but not fewer than
+     * {@code minPermits}: a bulk consumer fills its batch in one call instead of probing {@link #availableTokens}
+     * first. If fewer than {@code minPermits} are available the result is rejected with the retry-after of
+     * {@code minPermits}; otherwise {@link AcquireResult.Acquired#permits()} is the granted count.
+     *
+     * <p>The core limiters decide atomically. This default probes and then acquires, so under contention it may
+     * settle for {@code minPermits} although more became available in between.
+     */
+    default AcquireResult tryAcquireUpTo(long nowNanos, long maxPermits, long minPermits) {
+        Utils.validatePermitRange(maxPermits, minPermits);
+        long permits = Math.clamp(availableTokens(nowNanos), minPermits, maxPermits);
+        AcquireResult result = tryAcquire(nowNanos, permits);
+        if (!result.isAcquired() && permits > minPermits) {
+            return tryAcquire(nowNanos, minPermits);
+        }
+        return result;
+    }
+
+    /**
+     * The clock {@code nowNanos} is read from when the caller does not pass it: {@link System#nanoTime()}, unless the
+     * limiter's state is shared with other JVMs and needs a common origin. Wrappers forward it to their delegate and
+     * code driving a limiter with the current time reads it from here.
+     */
+    default long nowNanos() {
+        return System.nanoTime();
+    }
+
     default AcquireResult tryAcquire(long permits) {
-        return tryAcquire(System.nanoTime(), permits);
+        return tryAcquire(nowNanos(), permits);
     }
 
     default long availableTokens() {
-        return availableTokens(System.nanoTime());
+        return availableTokens(nowNanos());
     }
 
     default long retryAfterNanos(long permits) {
-        return retryAfterNanos(System.nanoTime(), permits);
+        return retryAfterNanos(nowNanos(), permits);
+    }
+
+    default AcquireResult tryAcquireUpTo(long maxPermits, long minPermits) {
+        return tryAcquireUpTo(nowNanos(), maxPermits, minPermits);
+    }
+
+    /**
+     * Blocks until {@code permits} are acquired, sleeping for the advertised retry-after between attempts.
+     *
+     * @return nanos spent waiting, 0 if the permits were available right away
+     */
+    default long acquire(long permits) throws InterruptedException {
+        long startNanos = nowNanos();
+        while (true) {
+            long nowNanos = nowNanos();
+            AcquireResult result = tryAcquire(nowNanos, permits);
+            if (result.isAcquired()) {
+                return nowNanos - startNanos;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(1, result.retryAfterNanos()));
+        }
     }
 
     sealed interface AcquireResult permits AcquireResult.Acquired, AcquireResult.Rejected {
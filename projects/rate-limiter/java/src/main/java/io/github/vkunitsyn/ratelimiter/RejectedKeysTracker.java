@@ -0,0 +1,268 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Approximate top-K of rejected keys ("who is being rejected right now?"), using the Space-Saving algorithm in
+ * constant memory.
+ *
+ * <p>Keys are spread over independently locked stripes, each running Space-Saving over a fixed number of
+ * counters, so recording a rejection is one short critical section on one stripe. A key always maps to the
+ * same stripe, so its count is never split. Every stripe keeps the current and the previous period; reported
+ * counts are {@code current + previous * (1 - elapsed fraction of the current period)}, i.e. an estimate over
+ * the last sliding period.
+ *
+ * <p>Space-Saving never underestimates a tracked key: {@code count - error <= real count <= count}. Each stripe keeps
+ * its counters in a stream summary (a hash index plus counters grouped in buckets of equal count), so recording a
+ * rejection is O(1) whatever the number of counters.
+ */
+public class RejectedKeysTracker<K> {
+    private final long periodNanos;
+    private final Stripe<K>[] stripes;
+
+    /**
+     * @param capacity total number of counters, split evenly between stripes; a key with more than
+     *     {@code stripes / capacity} of its stripe's rejections is always tracked, which is about {@code 1 / capacity}
+     *     of all rejections when the stripes are evenly loaded, and more for the keys of a busier stripe
+     * @param stripes number of independently locked stripes, rounded up to a power of two
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RejectedKeysTracker(int capacity, int stripes, long periodNanos) {
+        if (capacity <= 0 || stripes <= 0 || periodNanos <= 0) {
+            throw new IllegalArgumentException("Capacity, stripes, period must be positive");
+        }
+        int stripeCount = Integer.highestOneBit(Math.min(stripes, capacity) * 2 - 1);
+        this.periodNanos = periodNanos;
+        this.stripes = new Stripe[stripeCount];
+        int countersPerStripe = Math.ceilDiv(capacity, stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe<>(countersPerStripe);
+        }
+    }
+
+    public void record(K key, long nowNanos) {
+        int hash = spread(key.hashCode());
+        Stripe<K> stripe = stripes[hash & (stripes.length - 1)];
+        synchronized (stripe) {
+            stripe.rotate(Math.floorDiv(nowNanos, periodNanos));
+            stripe.current.increment(key);
+        }
+    }
+
+    /** The {@code k} most rejected keys over the last sliding period, most rejected first. */
+    public List<Entry<K>> topRejected(int k, long nowNanos) {
+        long period = Math.floorDiv(nowNanos, periodNanos);
+        double previousWeight = 1.0 - (double) Math.floorMod(nowNanos, periodNanos) / periodNanos;
+
+        List<Entry<K>> entries = new ArrayList<>();
+        for (Stripe<K> stripe : stripes) {
+            Map<K, Entry<K>> merged = new HashMap<>();
+            synchronized (stripe) {
+                stripe.rotate(period);
+                stripe.previous.forEach(merged, previousWeight);
+                stripe.current.forEach(merged, 1.0);
+            }
+            entries.addAll(merged.values());
+        }
+        entries.sort(Comparator.comparingLong(Entry<K>::count).reversed());
+        return List.copyOf(entries.subList(0, Math.min(k, entries.size())));
+    }
+
+    /** Returns a view of {@code limiter} that records every rejected acquisition in this tracker. */
+    public KeyedRateLimiter<K> attachTo(KeyedRateLimiter<K> limiter) {
+        Objects.requireNonNull(limiter, "limiter");
+        return new KeyedRateLimiter<>() {
+            @Override
+            public AcquireResult tryAcquire(K key, long nowNanos, long permits) {
+                AcquireResult result = limiter.tryAcquire(key, nowNanos, permits);
+                if (!result.isAcquired()) {
+                    record(key, nowNanos);
+                }
+                return result;
+            }
+
+            @Override
+            public long availableTokens(K key, long nowNanos) {
+                return limiter.availableTokens(key, nowNanos);
+            }
+
+            @Override
+            public long retryAfterNanos(K key, long nowNanos, long permits) {
+                return limiter.retryAfterNanos(key, nowNanos, permits);
+            }
+        };
+    }
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x9E3779B9;
+    }
+
+    /**
+     * @param count estimated rejections over the last sliding period
+     * @param error how much {@code count} may overestimate the real number
+     */
+    public record Entry<K>(K key, long count, long error) {}
+
+    private static final class Stripe<K> {
+        private Summary<K> current;
+        private Summary<K> previous;
+        private long period = Long.MIN_VALUE;
+
+        Stripe(int counters) {
+            this.current = new Summary<>(counters);
+            this.previous = new Summary<>(counters);
+        }
+
+        void rotate(long nowPeriod) {
+            if (nowPeriod <= period) {
+                return;
+            }
+            Summary<K> expired = previous;
+            previous = current;
+            if (nowPeriod != period + 1) {
+                previous.clear(); // idle for more than a period, nothing is recent anymore
+            }
+            current = expired;
+            current.clear();
+            period = nowPeriod;
+        }
+    }
+
+    /** Space-Saving over a fixed set of counters, as a stream summary. */
+    private static final class Summary<K> {
+        private final int capacity;
+        private final Map<K, Counter<K>> index;
+        // buckets in ascending count order, the first one holds the counters Space-Saving evicts
+        private Bucket<K> min;
+
+        Summary(int counters) {
+            this.capacity = counters;
+            this.index = HashMap.newHashMap(counters);
+        }
+
+        void increment(K key) {
+            Counter<K> counter = index.get(key);
+            if (counter != null) {
+                moveUp(counter);
+                return;
+            }
+            if (index.size() < capacity) {
+                counter = new Counter<>(key);
+                if (min == null || min.count != 1) {
+                    Bucket<K> first = new Bucket<>(1);
+                    first.next = min;
+                    if (min != null) {
+                        min.prev = first;
+                    }
+                    min = first;
+                }
+                min.add(counter);
+                index.put(key, counter);
+                return;
+            }
+            // evict a minimum: the newcomer inherits its count as the overestimation error
+            counter = min.first;
+            index.remove(counter.key);
+            counter.key = key;
+            counter.error = min.count;
+            index.put(key, counter);
+            moveUp(counter);
+        }
+
+        void forEach(Map<K, Entry<K>> merged, double weight) {
+            for (Counter<K> counter : index.values()) {
+                long count = Math.round(counter.bucket.count * weight);
+                if (count == 0) {
+                    continue;
+                }
+                long error = Math.round(counter.error * weight);
+                K key = counter.key;
+                merged.merge(
+                        key,
+                        new Entry<>(key, count, error),
+                        (a, b) -> new Entry<>(key, a.count() + b.count(), a.error() + b.error()));
+            }
+        }
+
+        void clear() {
+            index.clear();
+            min = null;
+        }
+
+        /** Moves {@code counter} from its bucket to the one counting one more, creating it if needed. */
+        private void moveUp(Counter<K> counter) {
+            Bucket<K> from = counter.bucket;
+            Bucket<K> to = from.next;
+            if (to == null || to.count != from.count + 1) {
+                to = new Bucket<>(from.count + 1);
+                to.prev = from;
+                to.next = from.next;
+                if (from.next != null) {
+                    from.next.prev = to;
+                }
+                from.next = to;
+            }
+            from.remove(counter);
+            to.add(counter);
+            if (from.first == null) {
+                if (from.prev != null) {
+                    from.prev.next = from.next;
+                } else {
+                    min = from.next;
+                }
+                from.next.prev = from.prev;
+            }
+        }
+    }
+
+    private static final class Counter<K> {
+        private K key;
+        private long error;
+        private Bucket<K> bucket;
+        private Counter<K> prev;
+        private Counter<K> next;
+
+        Counter(K key) {
+            this.key = key;
+        }
+    }
+
+    /** The counters sharing one count, as a doubly linked list. */
+    private static final class Bucket<K> {
+        private final long count;
+        private Counter<K> first;
+        private Bucket<K> prev;
+        private Bucket<K> next;
+
+        Bucket(long count) {
+            this.count = count;
+        }
+
+        void add(Counter<K> counter) {
+            counter.bucket = this;
+            counter.prev = null;
+            counter.next = first;
+            if (first != null) {
+                first.prev = counter;
+            }
+            first = counter;
+        }
+
+        void remove(Counter<K> counter) {
+            if (counter.prev != null) {
+                counter.prev.next = counter.next;
+            } else {
+                first = counter.next;
+            }
+            if (counter.next != null) {
+                counter.next.prev = counter.prev;
+            }
+        }
+    }
+}
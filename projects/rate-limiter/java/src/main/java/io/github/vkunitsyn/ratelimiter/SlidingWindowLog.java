@@ -1,54 +1,106 @@
 package io.github.vkunitsyn.ratelimiter;
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
 
+/**
+ * At most {@code rate} permits in any window of {@code windowSizeNanos}, tracked with a log of permit timestamps.
+ *
+ * <p>Acquisitions take a write lock. Reads never lock: they count the permits still inside the window straight
+ * from the log, optimistically and without trimming it, so both log implementations are plain arrays that stay
+ * safe to walk while being modified.
+ */
 public class SlidingWindowLog implements RateLimiter {
     private final long rate;
-    private final LinkedList<Long> log;
+    private final Log log;
     private final long windowSizeNanos;
+    private final StampedLock lock = new StampedLock();
 
     public SlidingWindowLog(long rate, long windowSizeNanos) {
         validateInitialParameters(rate, windowSizeNanos);
         this.rate = rate;
-        this.log = new LinkedList<>();
+        this.log = new ExactLog();
+        this.windowSizeNanos = windowSizeNanos;
+    }
+
+    /**
+     * Bounded-memory mode: instead of one entry per permit, the log keeps a count per sub-window of
+     * {@code ceil(windowSizeNanos / buckets)} nanos in a circular {@code long[buckets + 1]}.
+     *
+     * <p>Every event is treated as if it happened at the last nanosecond of its sub-window, so compared to
+     * the exact log a permit stays in the window up to one sub-window longer (never shorter). More buckets
+     * mean less quantization error and more memory.
+     */
+    public SlidingWindowLog(long rate, long windowSizeNanos, int buckets) {
+        validateInitialParameters(rate, windowSizeNanos);
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("Buckets must be positive");
+        }
+        this.rate = rate;
+        this.log = new BucketedLog(Math.ceilDiv(windowSizeNanos, buckets), buckets + 1);
         this.windowSizeNanos = windowSizeNanos;
     }
 
     @Override
-    public synchronized AcquireResult tryAcquire(long nowNanos, long permits) {
+    public AcquireResult tryAcquire(long nowNanos, long permits) {
         validatePermits(permits);
-        actualizeLog(nowNanos);
-        for (long i = 0; i < permits; i++) {
-            log.addLast(nowNanos); // By design we fill log even with rejected events
+        long stamp = lock.writeLock();
+        try {
+            log.removeOlderThan(windowStartNanos(nowNanos));
+            log.append(nowNanos, permits); // By design we fill log even with rejected events
+            if (log.sizeFrom(Long.MIN_VALUE) <= rate) {
+                return new AcquireResult.Acquired(permits);
+            }
+            // the log is trimmed already, every logged permit counts
+            return new AcquireResult.Rejected(retryAfterNanosInternal(nowNanos, permits, Long.MIN_VALUE));
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        if (log.size() <= rate) {
-            return new AcquireResult.Acquired(permits);
+    }
+
+    /** Like a rejected {@code tryAcquire}, a rejection logs {@code minPermits}. */
+    @Override
+    public AcquireResult tryAcquireUpTo(long nowNanos, long maxPermits, long minPermits) {
+        validatePermits(minPermits);
+        Utils.validatePermitRange(maxPermits, minPermits);
+        long stamp = lock.writeLock();
+        try {
+            log.removeOlderThan(windowStartNanos(nowNanos));
+            long permits = Math.min(maxPermits, rate - log.sizeFrom(Long.MIN_VALUE));
+            if (permits >= minPermits) {
+                log.append(nowNanos, permits);
+                return new AcquireResult.Acquired(permits);
+            }
+            log.append(nowNanos, minPermits);
+            return new AcquireResult.Rejected(retryAfterNanosInternal(nowNanos, minPermits, Long.MIN_VALUE));
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        return new AcquireResult.Rejected(retryAfterNanosInternal(nowNanos, permits));
     }
 
     @Override
-    public synchronized long availableTokens(long nowNanos) {
-        actualizeLog(nowNanos);
-        long availableTokens = rate - log.size();
-        return Math.max(0, availableTokens);
+    public long availableTokens(long nowNanos) {
+        return Utils.readOptimistically(lock, () -> {
+            long availableTokens = rate - log.sizeFrom(windowStartNanos(nowNanos));
+            return Math.max(0, availableTokens);
+        });
     }
 
     @Override
-    public synchronized long retryAfterNanos(long nowNanos, long permits) {
+    public long retryAfterNanos(long nowNanos, long permits) {
         validatePermits(permits);
-        actualizeLog(nowNanos);
-        return retryAfterNanosInternal(nowNanos, permits);
+        return Utils.readOptimistically(
+                lock, () -> retryAfterNanosInternal(nowNanos, permits, windowStartNanos(nowNanos)));
     }
 
-    private long retryAfterNanosInternal(long nowNanos, long permits) {
-        long available = rate - log.size();
+    private long retryAfterNanosInternal(long nowNanos, long permits, long windowStartNanos) {
+        long available = rate - log.sizeFrom(windowStartNanos);
         if (available >= permits) {
             return 0;
         }
 
         long deficit = permits - available;
-        long nextAvailableWindowStartNanos = log.get((int) deficit - 1);
+        long nextAvailableWindowStartNanos = log.timestampOf(windowStartNanos, deficit);
         long nextAvailableWindowEndNanos = Utils.saturatedAdd(nextAvailableWindowStartNanos, windowSizeNanos);
         return Math.max(0, nextAvailableWindowEndNanos - nowNanos);
     }
@@ -62,14 +114,12 @@ private void validatePermits(long permits) {
         }
     }
 
-    private void actualizeLog(long nowNanos) {
-        if (log.isEmpty() || nowNanos < log.getLast()) {
-            return; // just ignore non-monotonic nowNanos
-        }
-        long currentWindowStartNanos = Utils.saturatedAdd(nowNanos, -windowSizeNanos);
-        while (!log.isEmpty() && log.getFirst() < currentWindowStartNanos) {
-            log.removeFirst();
+    /** Permits logged before the returned time have left the window. */
+    private long windowStartNanos(long nowNanos) {
+        if (log.isEmpty() || nowNanos < log.lastTimestamp()) {
+            return Long.MIN_VALUE; // just ignore non-monotonic nowNanos
         }
+        return Utils.saturatedAdd(nowNanos, -windowSizeNanos);
     }
 
     private static void validateInitialParameters(long rate, long windowSizeNanos) {
@@ -77,4 +127,198 @@ private static void validateInitialParameters(long rate, long windowSizeNanos) {
             throw new IllegalArgumentException("Rate, window size must be positive");
         }
     }
+
+    /**
+     * Read methods may run concurrently with a writer (see {@link Utils#readOptimistically}), so on torn state
+     * they must stay within array bounds and terminate; the caller discards their result then.
+     */
+    private interface Log {
+        boolean isEmpty();
+
+        long lastTimestamp();
+
+        void append(long nowNanos, long permits);
+
+        /** Removes every logged permit with a timestamp strictly before {@code windowStartNanos}. */
+        void removeOlderThan(long windowStartNanos);
+
+        /** Number of logged permits that {@code removeOlderThan(windowStartNanos)} would keep. */
+        long sizeFrom(long windowStartNanos);
+
+        /** Timestamp of the n-th oldest permit that {@code removeOlderThan(windowStartNanos)} would keep, 1-based. */
+        long timestampOf(long windowStartNanos, long n);
+    }
+
+    /** One timestamp per permit in a growable power-of-two ring. */
+    private static final class ExactLog implements Log {
+        private long[] timestamps = new long[16];
+        private long head; // position of the oldest permit, reduced modulo the ring length on access
+        private long tail; // position after the newest permit
+
+        @Override
+        public boolean isEmpty() {
+            return head == tail;
+        }
+
+        @Override
+        public long lastTimestamp() {
+            long[] timestamps = this.timestamps;
+            return timestamps[index(timestamps, tail - 1)];
+        }
+
+        @Override
+        public void append(long nowNanos, long permits) {
+            long size = tail - head;
+            if (size + permits > timestamps.length) {
+                grow(size + permits);
+            }
+            for (long i = 0; i < permits; i++) {
+                timestamps[index(timestamps, tail)] = nowNanos;
+                tail++;
+            }
+        }
+
+        @Override
+        public void removeOlderThan(long windowStartNanos) {
+            while (head < tail && timestamps[index(timestamps, head)] < windowStartNanos) {
+                head++;
+            }
+        }
+
+        @Override
+        public long sizeFrom(long windowStartNanos) {
+            long[] timestamps = this.timestamps;
+            long head = this.head;
+            long size = Math.clamp(tail - head, 0, timestamps.length);
+            return size - expired(timestamps, head, size, windowStartNanos);
+        }
+
+        @Override
+        public long timestampOf(long windowStartNanos, long n) {
+            long[] timestamps = this.timestamps;
+            long head = this.head;
+            long size = Math.clamp(tail - head, 0, timestamps.length);
+            long expired = expired(timestamps, head, size, windowStartNanos);
+            return timestamps[index(timestamps, head + expired + n - 1)];
+        }
+
+        /** Number of permits at the head of the ring logged before {@code windowStartNanos}. */
+        private static long expired(long[] timestamps, long head, long size, long windowStartNanos) {
+            long expired = 0;
+            while (expired < size && timestamps[index(timestamps, head + expired)] < windowStartNanos) {
+                expired++;
+            }
+            return expired;
+        }
+
+        private void grow(long minCapacity) {
+            if (minCapacity > 1 << 30) {
+                throw new IllegalStateException("Sliding window log is full");
+            }
+            long[] grown = new long[Integer.highestOneBit((int) minCapacity - 1) << 1];
+            long size = tail - head;
+            for (long i = 0; i < size; i++) {
+                grown[(int) i] = timestamps[index(timestamps, head + i)];
+            }
+            timestamps = grown;
+            head = 0;
+            tail = size;
+        }
+
+        private static int index(long[] timestamps, long position) {
+            return (int) position & (timestamps.length - 1);
+        }
+    }
+
+    private static final class BucketedLog implements Log {
+        private final long bucketSizeNanos;
+        private final long[] counts;
+        private long oldestBucket;
+        private long newestBucket;
+        private long lastTimestampNanos;
+        private long size;
+
+        BucketedLog(long bucketSizeNanos, int slots) {
+            this.bucketSizeNanos = bucketSizeNanos;
+            this.counts = new long[slots];
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public long lastTimestamp() {
+            return lastTimestampNanos;
+        }
+
+        @Override
+        public void append(long nowNanos, long permits) {
+            long bucket = Math.floorDiv(nowNanos, bucketSizeNanos);
+            if (size == 0) {
+                oldestBucket = bucket;
+                newestBucket = bucket;
+            } else if (bucket > newestBucket) {
+                // slots between the old and the new head were already cleared by removeOlderThan
+                newestBucket = bucket;
+            }
+            // a non-monotonic nowNanos lands in the newest bucket, i.e. it is rounded up like any other event
+            counts[slot(newestBucket)] += permits;
+            size += permits;
+            lastTimestampNanos = nowNanos;
+        }
+
+        @Override
+        public void removeOlderThan(long windowStartNanos) {
+            // a bucket is alive while its last nanosecond is still inside the window
+            long firstAliveBucket = Math.floorDiv(windowStartNanos, bucketSizeNanos);
+            if (firstAliveBucket > newestBucket) {
+                Arrays.fill(counts, 0);
+                size = 0;
+                return;
+            }
+            while (oldestBucket < firstAliveBucket) {
+                size -= counts[slot(oldestBucket)];
+                counts[slot(oldestBucket)] = 0;
+                oldestBucket++;
+            }
+        }
+
+        @Override
+        public long sizeFrom(long windowStartNanos) {
+            long firstAliveBucket = Math.floorDiv(windowStartNanos, bucketSizeNanos);
+            if (firstAliveBucket > newestBucket) {
+                return 0;
+            }
+            long size = this.size;
+            long oldestBucket = this.oldestBucket;
+            // never more than one pass over the slots, even on indices torn by a concurrent writer
+            long end = Math.min(firstAliveBucket, oldestBucket + counts.length);
+            for (long bucket = oldestBucket; bucket < end; bucket++) {
+                size -= counts[slot(bucket)];
+            }
+            return size;
+        }
+
+        @Override
+        public long timestampOf(long windowStartNanos, long n) {
+            long seen = 0;
+            long bucket = Math.max(oldestBucket, Math.floorDiv(windowStartNanos, bucketSizeNanos));
+            long end = Math.min(newestBucket, bucket + counts.length);
+            while (bucket < end) {
+                seen += counts[slot(bucket)];
+                if (seen >= n) {
+                    break;
+                }
+                bucket++;
+            }
+            long bucketStartNanos = bucket * bucketSizeNanos; // <= some logged nowNanos, cannot overflow
+            return Utils.saturatedAdd(bucketStartNanos, bucketSizeNanos - 1);
+        }
+
+        private int slot(long bucket) {
+            return (int) Math.floorMod(bucket, (long) counts.length);
+        }
+    }
 }
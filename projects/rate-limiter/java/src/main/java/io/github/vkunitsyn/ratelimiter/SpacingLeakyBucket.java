@@ -1,26 +1,49 @@
 package io.github.vkunitsyn.ratelimiter;
 
+/**
+ * Leaky bucket as a meter: permits are spaced {@code rateIntervalNanos} apart, with up to {@code maxBurst} of
+ * them scheduled ahead of time.
+ *
+ * <p>The whole state is one {@code volatile long}, so reads never lock; acquisitions are {@code synchronized}.
+ *
+ * <p>Optionally permits come in priority classes, 0 being the highest: class {@code p} may only schedule up to
+ * {@code maxBurst - reserves[p]} permits ahead, leaving the rest of the burst to higher classes. The overloads
+ * without a priority use class 0.
+ */
 public class SpacingLeakyBucket implements RateLimiter {
     private final long maxBurst;
     private final long rateIntervalNanos;
-    private long nextFreeTimeNanos;
+    private final long[] reserves;
+    private volatile long nextFreeTimeNanos;
 
     public SpacingLeakyBucket(long maxBurst, long rateIntervalNanos) {
+        this(maxBurst, rateIntervalNanos, new long[] {0});
+    }
+
+    /** @param reserves permits of the burst each priority class must leave unscheduled, non-decreasing from 0 */
+    public SpacingLeakyBucket(long maxBurst, long rateIntervalNanos, long[] reserves) {
         validateInitialParameters(maxBurst, rateIntervalNanos);
         this.maxBurst = maxBurst;
         this.rateIntervalNanos = rateIntervalNanos;
+        this.reserves = Utils.validateReserves(reserves, maxBurst);
     }
 
     @Override
-    public synchronized AcquireResult tryAcquire(long nowNanos, long permits) {
-        validatePermits(permits);
+    public AcquireResult tryAcquire(long nowNanos, long permits) {
+        return tryAcquire(nowNanos, permits, 0);
+    }
 
-        long effectiveFreeTimeNanos = Math.max(nowNanos, nextFreeTimeNanos);
+    public synchronized AcquireResult tryAcquire(long nowNanos, long permits, int priority) {
+        long burst = burst(priority);
+        validatePermits(permits, burst);
+
+        long freeTimeNanos = nextFreeTimeNanos;
+        long effectiveFreeTimeNanos = Math.max(nowNanos, freeTimeNanos);
         long permitsWindowNanos = Utils.saturatedMultiply(permits, rateIntervalNanos);
         long nextPossibleFreeTimeNanos = Utils.saturatedAdd(effectiveFreeTimeNanos, permitsWindowNanos);
-        long burstWindowNanos = Utils.saturatedMultiply(maxBurst, rateIntervalNanos);
+        long burstWindowNanos = Utils.saturatedMultiply(burst, rateIntervalNanos);
         if (nextPossibleFreeTimeNanos > Utils.saturatedAdd(nowNanos, burstWindowNanos)) {
-            return new AcquireResult.Rejected(retryAfterNanosInternal(nowNanos, permits));
+            return new AcquireResult.Rejected(retryAfterNanosInternal(nowNanos, permits, burst, freeTimeNanos));
         }
 
         nextFreeTimeNanos = nextPossibleFreeTimeNanos;
@@ -28,36 +51,74 @@ public synchronized AcquireResult tryAcquire(long nowNanos, long permits) {
     }
 
     @Override
-    public synchronized long availableTokens(long nowNanos) {
-        long burstWindow = Utils.saturatedMultiply(maxBurst, rateIntervalNanos);
-        long slack = Utils.saturatedAdd(nowNanos, burstWindow) - nextFreeTimeNanos;
+    public synchronized AcquireResult tryAcquireUpTo(long nowNanos, long maxPermits, long minPermits) {
+        long burst = burst(0);
+        validatePermits(minPermits, burst);
+        Utils.validatePermitRange(maxPermits, minPermits);
+
+        long freeTimeNanos = nextFreeTimeNanos;
+        long permits = Math.min(maxPermits, availableTokensInternal(nowNanos, burst, freeTimeNanos));
+        if (permits < minPermits) {
+            return new AcquireResult.Rejected(retryAfterNanosInternal(nowNanos, minPermits, burst, freeTimeNanos));
+        }
+        long permitsWindowNanos = Utils.saturatedMultiply(permits, rateIntervalNanos);
+        nextFreeTimeNanos = Utils.saturatedAdd(Math.max(nowNanos, freeTimeNanos), permitsWindowNanos);
+        return new AcquireResult.Acquired(permits);
+    }
+
+    @Override
+    public long availableTokens(long nowNanos) {
+        return availableTokens(nowNanos, 0);
+    }
+
+    /** Permits class {@code priority} could take right now, i.e. within its share of the burst. */
+    public long availableTokens(long nowNanos, int priority) {
+        return availableTokensInternal(nowNanos, burst(priority), nextFreeTimeNanos);
+    }
+
+    private long availableTokensInternal(long nowNanos, long burst, long freeTimeNanos) {
+        long burstWindow = Utils.saturatedMultiply(burst, rateIntervalNanos);
+        long slack = Utils.saturatedAdd(nowNanos, burstWindow) - freeTimeNanos;
 
         if (slack <= 0) {
             return 0;
         }
 
         long tokens = slack / rateIntervalNanos;
-        return Math.min(tokens, maxBurst);
+        return Math.min(tokens, burst);
     }
 
     @Override
-    public synchronized long retryAfterNanos(long nowNanos, long permits) {
-        validatePermits(permits);
-        return retryAfterNanosInternal(nowNanos, permits);
+    public long retryAfterNanos(long nowNanos, long permits) {
+        return retryAfterNanos(nowNanos, permits, 0);
     }
 
-    private long retryAfterNanosInternal(long nowNanos, long permits) {
-        long burstSlack = Utils.saturatedMultiply(maxBurst - permits, rateIntervalNanos);
-        long threshold = nextFreeTimeNanos - burstSlack;
+    public long retryAfterNanos(long nowNanos, long permits, int priority) {
+        long burst = burst(priority);
+        validatePermits(permits, burst);
+        return retryAfterNanosInternal(nowNanos, permits, burst, nextFreeTimeNanos);
+    }
+
+    private long retryAfterNanosInternal(long nowNanos, long permits, long burst, long freeTimeNanos) {
+        long burstSlack = Utils.saturatedMultiply(burst - permits, rateIntervalNanos);
+        long threshold = freeTimeNanos - burstSlack;
         long wait = threshold - nowNanos;
         return Math.max(0, wait);
     }
 
-    private void validatePermits(long permits) {
+    /** The part of {@code maxBurst} class {@code priority} may schedule ahead. */
+    private long burst(int priority) {
+        if (priority < 0 || priority >= reserves.length) {
+            throw new IllegalArgumentException("Unknown priority class");
+        }
+        return maxBurst - reserves[priority];
+    }
+
+    private void validatePermits(long permits, long burst) {
         if (permits <= 0) {
             throw new IllegalArgumentException("Permits must be positive");
         }
-        if (permits > maxBurst) {
+        if (permits > burst) {
             throw new IllegalArgumentException("Permits exceed bucket capacity");
         }
     }
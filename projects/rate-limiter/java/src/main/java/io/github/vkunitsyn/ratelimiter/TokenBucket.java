@@ -1,55 +1,240 @@
 package io.github.vkunitsyn.ratelimiter;
 
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Classic token bucket: {@code refillTokens} are added every {@code refillPeriodNanos}, up to {@code capacity}.
+ *
+ * <p>Acquisitions take a write lock. {@link #availableTokens(long)} and {@link #retryAfterNanos(long, long)} never
+ * lock: they optimistically compute the refilled view from the current state without writing it back.
+ *
+ * <p>Optionally permits come in priority classes, 0 being the highest: class {@code p} may only take tokens above
+ * {@code reserves[p]}, so under overload lower classes are rejected while the reserve is kept for higher ones. The
+ * reserve check is part of the same locked decision. The overloads without a priority use class 0.
+ *
+ * <p>In warm-up mode a bucket that saw no acquisition attempt for {@code warmUpNanos} (or none yet) is cold: it
+ * holds at most {@code refillTokens} instead of a full burst, and its refill rate ramps linearly from
+ * {@code 1 / coldFactor} of the steady rate up to the steady rate over the next {@code warmUpNanos}. The ramp runs
+ * the usual refill schedule on a virtual clock that starts slow and catches up with real time; converting between
+ * the clocks is a closed-form quadratic, so every call stays O(1) and retry-after is exact during the ramp.
+ *
+ * <p>In continuous mode ({@link #continuous}) tokens trickle in at {@code refillTokens / refillPeriodNanos} per
+ * nanosecond instead of arriving in whole-period steps. Partial tokens are kept in fixed point with
+ * {@code refillPeriodNanos} as the denominator, which makes the refill and retry-after exact integer arithmetic: no
+ * bursts at period edges, and no need for tiny periods to get a smooth rate.
+ */
 public class TokenBucket implements RateLimiter {
     private final long capacity;
     private final long refillTokens;
     private final long refillPeriodNanos;
+    private final long[] reserves;
+    private final long warmUpNanos;
+    private final double coldRate;
+    private final long virtualWarmUpNanos;
+    private final boolean continuous;
     private long availableTokens;
+    // continuous mode: the next partial token, in units of 1 / refillPeriodNanos tokens
+    private long refillFraction;
+    // on the virtual clock in warm-up mode
     private long lastRefillNanos;
+    private long warmUpStartNanos;
+    // last acquisition attempt, or when a rejected one was told to come back
+    private long lastDemandNanos = Long.MIN_VALUE;
+    private final StampedLock lock = new StampedLock();
 
     public TokenBucket(long capacity, long refillTokens, long refillPeriodNanos) {
+        this(capacity, refillTokens, refillPeriodNanos, new long[] {0});
+    }
+
+    /** @param reserves tokens each priority class must leave in the bucket, non-decreasing from class 0 */
+    public TokenBucket(long capacity, long refillTokens, long refillPeriodNanos, long[] reserves) {
+        this(capacity, refillTokens, refillPeriodNanos, reserves, 0, 1);
+    }
+
+    /**
+     * Warm-up mode, see the class comment.
+     *
+     * @param coldFactor how many times slower than steady the refill is right after a cold start
+     */
+    public TokenBucket(long capacity, long refillTokens, long refillPeriodNanos, long warmUpNanos, int coldFactor) {
+        this(capacity, refillTokens, refillPeriodNanos, new long[] {0}, warmUpNanos, coldFactor);
+    }
+
+    public TokenBucket(
+            long capacity,
+            long refillTokens,
+            long refillPeriodNanos,
+            long[] reserves,
+            long warmUpNanos,
+            int coldFactor) {
+        this(capacity, refillTokens, refillPeriodNanos, reserves, warmUpNanos, coldFactor, false);
+    }
+
+    private TokenBucket(
+            long capacity,
+            long refillTokens,
+            long refillPeriodNanos,
+            long[] reserves,
+            long warmUpNanos,
+            int coldFactor,
+            boolean continuous) {
         validateInitialParameters(capacity, refillTokens, refillPeriodNanos);
+        if (warmUpNanos < 0 || coldFactor <= 0) {
+            throw new IllegalArgumentException("Warm-up period cannot be negative, cold factor must be positive");
+        }
         this.capacity = capacity;
         this.refillTokens = refillTokens;
         this.refillPeriodNanos = refillPeriodNanos;
+        this.reserves = Utils.validateReserves(reserves, capacity);
+        // a cold factor of 1 has nothing to ramp
+        this.warmUpNanos = coldFactor == 1 ? 0 : warmUpNanos;
+        this.coldRate = 1.0 / coldFactor;
+        this.virtualWarmUpNanos = (long) (this.warmUpNanos * (1 + coldRate) / 2);
+        this.continuous = continuous;
         this.availableTokens = capacity;
         this.lastRefillNanos = Long.MIN_VALUE;
     }
 
+    /** Continuous refill at {@code refillTokens} per {@code refillPeriodNanos}, see the class comment. */
+    public static TokenBucket continuous(long capacity, long refillTokens, long refillPeriodNanos) {
+        return new TokenBucket(capacity, refillTokens, refillPeriodNanos, new long[] {0}, 0, 1, true);
+    }
+
+    @Override
+    public AcquireResult tryAcquire(long nowNanos, long permits) {
+        return tryAcquire(nowNanos, permits, 0);
+    }
+
+    public AcquireResult tryAcquire(long nowNanos, long permits, int priority) {
+        long reserve = reserve(priority);
+        validatePermits(permits, reserve);
+        long stamp = lock.writeLock();
+        try {
+            refillTokens(nowNanos);
+            lastDemandNanos = nowNanos;
+
+            if (availableTokens - reserve >= permits) {
+                availableTokens -= permits;
+                return new AcquireResult.Acquired(permits);
+            }
+            long retryAfterNanos = retryAfterNanosInternal(
+                    nowNanos, permits + reserve, availableTokens, refillFraction, lastRefillNanos, warmUpStartNanos);
+            // waiting for the retry is not idleness, the ramp must not restart under a waiting client
+            lastDemandNanos = Utils.saturatedAdd(nowNanos, retryAfterNanos);
+            return new AcquireResult.Rejected(retryAfterNanos);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
     @Override
-    public synchronized AcquireResult tryAcquire(long nowNanos, long permits) {
-        validatePermits(permits);
-        refillTokens(nowNanos);
+    public AcquireResult tryAcquireUpTo(long nowNanos, long maxPermits, long minPermits) {
+        long reserve = reserve(0);
+        validatePermits(minPermits, reserve);
+        Utils.validatePermitRange(maxPermits, minPermits);
+        long stamp = lock.writeLock();
+        try {
+            refillTokens(nowNanos);
+            lastDemandNanos = nowNanos;
 
-        if (availableTokens >= permits) {
-            availableTokens -= permits;
-            return new AcquireResult.Acquired(permits);
+            long permits = Math.min(maxPermits, availableTokens - reserve);
+            if (permits >= minPermits) {
+                availableTokens -= permits;
+                return new AcquireResult.Acquired(permits);
+            }
+            long retryAfterNanos = retryAfterNanosInternal(
+                    nowNanos, minPermits + reserve, availableTokens, refillFraction, lastRefillNanos, warmUpStartNanos);
+            lastDemandNanos = Utils.saturatedAdd(nowNanos, retryAfterNanos);
+            return new AcquireResult.Rejected(retryAfterNanos);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Takes {@code permits} unconditionally, for traffic already admitted elsewhere (see
+     * {@link HierarchicalTokenBucket}). The bucket may go into debt, which later refills pay back first; the debt is
+     * capped at {@code capacity} so that it is always paid back within one full refill.
+     */
+    void charge(long nowNanos, long permits) {
+        long stamp = lock.writeLock();
+        try {
+            refillTokens(nowNanos);
+            lastDemandNanos = nowNanos;
+            availableTokens = Math.max(-capacity, availableTokens - permits);
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        return new AcquireResult.Rejected(retryAfterNanosInternal(nowNanos, permits));
     }
 
     @Override
-    public synchronized long availableTokens(long nowNanos) {
-        refillTokens(nowNanos);
-        return availableTokens;
+    public long availableTokens(long nowNanos) {
+        return availableTokens(nowNanos, 0);
+    }
+
+    /** Tokens class {@code priority} could take right now, i.e. above its reserve. */
+    public long availableTokens(long nowNanos, int priority) {
+        long reserve = reserve(priority);
+        long tokens = Utils.readOptimistically(lock, () -> currentTokens(nowNanos));
+        return Math.max(0, tokens - reserve);
     }
 
     @Override
-    public synchronized long retryAfterNanos(long nowNanos, long permits) {
-        validatePermits(permits);
-        refillTokens(nowNanos);
-        return retryAfterNanosInternal(nowNanos, permits);
+    public long retryAfterNanos(long nowNanos, long permits) {
+        return retryAfterNanos(nowNanos, permits, 0);
+    }
+
+    public long retryAfterNanos(long nowNanos, long permits, int priority) {
+        long reserve = reserve(priority);
+        validatePermits(permits, reserve);
+        return Utils.readOptimistically(lock, () -> {
+            if (isCold(nowNanos)) {
+                return retryAfterNanosInternal(
+                        nowNanos, permits + reserve, currentTokens(nowNanos), 0, nowNanos, nowNanos);
+            }
+            // the refill up to nowNanos is implied: it cannot overshoot the time the permits become available
+            return retryAfterNanosInternal(
+                    nowNanos, permits + reserve, availableTokens, refillFraction, lastRefillNanos, warmUpStartNanos);
+        });
+    }
+
+    private long reserve(int priority) {
+        if (priority < 0 || priority >= reserves.length) {
+            throw new IllegalArgumentException("Unknown priority class");
+        }
+        return reserves[priority];
+    }
+
+    /** Tokens after refilling up to {@code nowNanos}, as a read that does not write the state back. */
+    private long currentTokens(long nowNanos) {
+        long virtualNowNanos = virtualNanos(nowNanos, warmUpStartNanos);
+        long tokens = continuous
+                ? refilledTokensContinuous(availableTokens, pendingRefillUnits(virtualNowNanos))
+                : refilledTokens(availableTokens, periodsSinceLastRefill(virtualNowNanos));
+        return isCold(nowNanos) ? Math.min(tokens, refillTokens) : tokens;
     }
 
-    private long retryAfterNanosInternal(long nowNanos, long permits) {
-        long missingTokens = permits - availableTokens;
+    /**
+     * @param tokens tokens as of {@code lastRefill}, possibly not refilled up to {@code nowNanos} yet
+     * @param fraction partial token as of {@code lastRefill}, continuous mode only
+     */
+    private long retryAfterNanosInternal(
+            long nowNanos, long permits, long tokens, long fraction, long lastRefill, long warmUpStart) {
+        long missingTokens = permits - tokens;
         if (missingTokens <= 0) {
             return 0;
         }
 
-        long periodsNeeded = Math.ceilDiv(missingTokens, refillTokens);
-        long fullRefillPeriodNanos = Utils.saturatedMultiply(periodsNeeded, refillPeriodNanos);
-        long fullRefillTimeNanos = Utils.saturatedAdd(lastRefillNanos, fullRefillPeriodNanos);
+        long fullRefillPeriodNanos;
+        if (continuous) {
+            long missingUnits = Utils.saturatedMultiply(missingTokens, refillPeriodNanos) - fraction;
+            fullRefillPeriodNanos = Math.ceilDiv(missingUnits, refillTokens);
+        } else {
+            long periodsNeeded = Math.ceilDiv(missingTokens, refillTokens);
+            fullRefillPeriodNanos = Utils.saturatedMultiply(periodsNeeded, refillPeriodNanos);
+        }
+        long fullRefillVirtualNanos = Utils.saturatedAdd(lastRefill, fullRefillPeriodNanos);
+        long fullRefillTimeNanos = realNanos(fullRefillVirtualNanos, warmUpStart);
 
         if (fullRefillTimeNanos <= nowNanos) {
             return 0;
@@ -57,41 +242,132 @@ private long retryAfterNanosInternal(long nowNanos, long permits) {
         return fullRefillTimeNanos - nowNanos;
     }
 
-    private void validatePermits(long permits) {
+    private void validatePermits(long permits, long reserve) {
         if (permits <= 0) {
             throw new IllegalArgumentException("Permits must be positive");
         }
-        if (permits > capacity) {
+        if (permits > capacity - reserve) {
             throw new IllegalArgumentException("Permits exceed bucket capacity");
         }
     }
 
     private void refillTokens(long nowNanos) {
+        if (isCold(nowNanos)) {
+            availableTokens = currentTokens(nowNanos);
+            refillFraction = 0;
+            lastRefillNanos = nowNanos;
+            warmUpStartNanos = nowNanos;
+            return;
+        }
         if (lastRefillNanos == Long.MIN_VALUE) {
             lastRefillNanos = nowNanos;
             return;
         }
-        if (nowNanos <= lastRefillNanos) {
+        if (continuous) {
+            long virtualNowNanos = virtualNanos(nowNanos, warmUpStartNanos);
+            if (virtualNowNanos <= lastRefillNanos) {
+                return;
+            }
+            long units = pendingRefillUnits(virtualNowNanos);
+            availableTokens = refilledTokensContinuous(availableTokens, units);
+            // a full bucket has nothing to carry over
+            refillFraction = availableTokens == capacity ? 0 : units % refillPeriodNanos;
+            lastRefillNanos = virtualNowNanos;
             return;
         }
 
-        long elapsedNanos = nowNanos - lastRefillNanos;
-        long periods = elapsedNanos / refillPeriodNanos;
+        long periods = periodsSinceLastRefill(virtualNanos(nowNanos, warmUpStartNanos));
         if (periods == 0) {
             return;
         }
 
         long refillAdvanceNanos = Utils.saturatedMultiply(periods, refillPeriodNanos);
         lastRefillNanos = Utils.saturatedAdd(lastRefillNanos, refillAdvanceNanos);
+        availableTokens = refilledTokens(availableTokens, periods);
+    }
+
+    /** In warm-up mode, whether an acquisition at {@code nowNanos} starts a new ramp after idleness. */
+    private boolean isCold(long nowNanos) {
+        if (warmUpNanos == 0) {
+            return false;
+        }
+        return lastDemandNanos == Long.MIN_VALUE || nowNanos >= Utils.saturatedAdd(lastDemandNanos, warmUpNanos);
+    }
+
+    /** Whole refill periods elapsed since the last refill; 0 before the first acquisition. */
+    private long periodsSinceLastRefill(long virtualNowNanos) {
+        if (lastRefillNanos == Long.MIN_VALUE || virtualNowNanos <= lastRefillNanos) {
+            return 0;
+        }
+        long elapsedNanos = virtualNowNanos - lastRefillNanos;
+        return elapsedNanos / refillPeriodNanos;
+    }
+
+    /**
+     * Continuous mode: the partial token plus everything refilled since the last refill, in units of
+     * {@code 1 / refillPeriodNanos} tokens; saturates at {@code Long.MAX_VALUE}.
+     */
+    private long pendingRefillUnits(long virtualNowNanos) {
+        if (lastRefillNanos == Long.MIN_VALUE || virtualNowNanos <= lastRefillNanos) {
+            return refillFraction;
+        }
+        long elapsedNanos = virtualNowNanos - lastRefillNanos;
+        return Utils.saturatedAdd(Utils.saturatedMultiply(elapsedNanos, refillTokens), refillFraction);
+    }
+
+    /**
+     * Time on the refill clock: it runs at {@code coldRate} at {@code warmUpStart}, speeds up linearly to real speed
+     * over {@code warmUpNanos}, then trails real time by {@code warmUpNanos - virtualWarmUpNanos}.
+     */
+    private long virtualNanos(long nowNanos, long warmUpStart) {
+        long elapsed = nowNanos - warmUpStart;
+        if (warmUpNanos == 0 || elapsed <= 0) {
+            return nowNanos;
+        }
+        if (elapsed >= warmUpNanos) {
+            return warmUpStart + virtualWarmUpNanos + (elapsed - warmUpNanos);
+        }
+        double x = elapsed;
+        return warmUpStart + (long) (coldRate * x + (1 - coldRate) * x * x / (2.0 * warmUpNanos));
+    }
 
+    /** The earliest real time at which {@link #virtualNanos} reaches {@code virtualNanos}. */
+    private long realNanos(long virtualNanos, long warmUpStart) {
+        if (warmUpNanos == 0 || virtualNanos <= warmUpStart) {
+            return virtualNanos;
+        }
+        if (virtualNanos >= Utils.saturatedAdd(warmUpStart, virtualWarmUpNanos)) {
+            return Utils.saturatedAdd(virtualNanos, warmUpNanos - virtualWarmUpNanos);
+        }
+        // solve (1 - c) / 2W * x^2 + c * x = v for x, then fix the rounding of the forward conversion
+        double v = virtualNanos - warmUpStart;
+        double root = Math.sqrt(coldRate * coldRate + 2 * (1 - coldRate) * v / warmUpNanos);
+        long elapsed = (long) Math.ceil(warmUpNanos * (root - coldRate) / (1 - coldRate));
+        while (virtualNanos(warmUpStart + elapsed, warmUpStart) < virtualNanos) {
+            elapsed++;
+        }
+        while (elapsed > 0 && virtualNanos(warmUpStart + elapsed - 1, warmUpStart) >= virtualNanos) {
+            elapsed--;
+        }
+        return warmUpStart + elapsed;
+    }
+
+    private long refilledTokens(long tokens, long periods) {
         long tokensToAdd = Utils.saturatedMultiply(periods, refillTokens);
         if (tokensToAdd == Long.MAX_VALUE) {
-            availableTokens = capacity;
-            return;
+            return capacity;
         }
 
-        long newTokens = Utils.saturatedAdd(availableTokens, tokensToAdd);
-        availableTokens = Math.min(capacity, newTokens);
+        long newTokens = Utils.saturatedAdd(tokens, tokensToAdd);
+        return Math.min(capacity, newTokens);
+    }
+
+    private long refilledTokensContinuous(long tokens, long units) {
+        if (units == Long.MAX_VALUE) {
+            return capacity;
+        }
+        long newTokens = Utils.saturatedAdd(tokens, units / refillPeriodNanos);
+        return Math.min(capacity, newTokens);
     }
 
     private static void validateInitialParameters(long capacity, long refillTokens, long refillPeriodNanos) {
@@ -1,5 +1,8 @@
 package io.github.vkunitsyn.ratelimiter;
 
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
 public class Utils {
     public static long saturatedAdd(long a, long b) {
         long r = a + b;
@@ -17,4 +20,57 @@ public static long saturatedMultiply(long a, long b) {
         if (a > Long.MAX_VALUE / b) return Long.MAX_VALUE;
         return a * b;
     }
+
+    /**
+     * Evaluates {@code read} over state guarded by {@code lock}, first without taking the lock; if a write is in
+     * progress or overlapped the evaluation, it is evaluated again under the read lock, so readers never spin behind a
+     * stream of writers. {@code read} may observe torn state and must neither write, throw nor loop unboundedly
+     * because of it; only a validated result is returned.
+     */
+    static long readOptimistically(StampedLock lock, LongSupplier read) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            long value = read.getAsLong();
+            if (lock.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return read.getAsLong();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Checks the bounds of a partial acquisition; the limiter still checks {@code minPermits} against its capacity. */
+    static void validatePermitRange(long maxPermits, long minPermits) {
+        if (minPermits <= 0) {
+            throw new IllegalArgumentException("Permits must be positive");
+        }
+        if (maxPermits < minPermits) {
+            throw new IllegalArgumentException("Max permits cannot be below min permits");
+        }
+    }
+
+    /**
+     * Checks per-priority reserves: index 0 is the highest priority, each lower class must leave at least as much
+     * unused as the one above it, and every class must still be able to take a permit.
+     */
+    static long[] validateReserves(long[] reserves, long capacity) {
+        if (reserves.length == 0) {
+            throw new IllegalArgumentException("At least one priority class is required");
+        }
+        long previous = 0;
+        for (long reserve : reserves) {
+            if (reserve < previous) {
+                throw new IllegalArgumentException("Reserves must be non-negative and non-decreasing");
+            }
+            if (reserve >= capacity) {
+                throw new IllegalArgumentException("Reserves must be below capacity");
+            }
+            previous = reserve;
+        }
+        return reserves.clone();
+    }
 }
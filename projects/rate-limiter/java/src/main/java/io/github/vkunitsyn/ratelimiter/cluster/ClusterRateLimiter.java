@@ -0,0 +1,295 @@
+package io.github.vkunitsyn.ratelimiter.cluster;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.Utils;
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One node of a cluster enforcing a shared fixed-window limit of {@code rate} permits per window, without a
+ * central server.
+ *
+ * <p>Every node keeps a G-counter (grow-only CRDT) of the permits each node granted in the current window and
+ * gossips it to all members over UDP every {@code gossipIntervalNanos}. Merging takes the element-wise maximum,
+ * so duplicated or reordered datagrams change nothing and all nodes converge to the same window total. Only
+ * datagrams from a configured member address are merged, and only for windows at most one ahead of this node's
+ * clock. Decisions only touch local memory.
+ *
+ * <p>Overshoot is bounded by rationing: each window starts with a ration of {@code ceil(rate / members)} per node,
+ * the most it may grant until its next round, and a single request may ask for at most that many permits. When a
+ * node gossips it renews its ration to {@code ceil(headroom / members)}, where {@code headroom} is what is left of
+ * {@code rate} in its merged view, but only if it has heard from every other member since its previous renewal. A
+ * node can only overshoot by grants it has not heard of yet: if every round's datagrams arrive before the next
+ * round, those are at most one ration per other node, so a window stays within
+ * {@code rate + (members - 1) * ceil(rate / members)}, and in practice much less as rations shrink with the headroom.
+ *
+ * <p>Lost datagrams weaken that bound. A view that misses grants over-estimates the headroom, which is why a node
+ * that stops hearing from a peer keeps its current ration instead of renewing it: cut off from the cluster, it
+ * grants at most what it had plus one ration per window. Under arbitrary loss the only hard bound is
+ * {@code members * rate}, since no node grants beyond {@code rate} by its own count.
+ *
+ * <p>Windows are aligned on {@code nowNanos}, which must be comparable across nodes: {@link #nowNanos()}, and with it
+ * every overload without {@code nowNanos}, {@link #acquire(long)} and the wrappers and executors that read the time
+ * from the limiter, is epoch nanos from the wall clock, not {@link System#nanoTime()}. Callers passing
+ * {@code nowNanos} themselves must pass epoch nanos too.
+ */
+public final class ClusterRateLimiter implements RateLimiter, AutoCloseable {
+    private static final int MAGIC = 0x52_4C_47_43; // "RLGC"
+    private static final System.Logger LOG = System.getLogger(ClusterRateLimiter.class.getName());
+
+    private final long rate;
+    private final long windowSizeNanos;
+    private final long gossipIntervalNanos;
+    private final int nodeId;
+    private final List<InetSocketAddress> members;
+    private final DatagramChannel channel;
+    private final ScheduledExecutorService gossip;
+    private final Thread receiver;
+
+    private final long[] consumed;
+    // members whose state arrived since the last ration renewal
+    private final boolean[] heard;
+    private long window = Long.MIN_VALUE;
+    private long ration;
+    private long grantedThisRound;
+
+    /**
+     * @param nodeId index of this node in {@code members}, its address is the one bound for gossip
+     * @param members gossip addresses of all nodes, in the same order on every node
+     */
+    public ClusterRateLimiter(
+            long rate, long windowSizeNanos, int nodeId, List<InetSocketAddress> members, long gossipIntervalNanos)
+            throws IOException {
+        validateInitialParameters(rate, windowSizeNanos, nodeId, members, gossipIntervalNanos);
+        this.rate = rate;
+        this.windowSizeNanos = windowSizeNanos;
+        this.gossipIntervalNanos = gossipIntervalNanos;
+        this.nodeId = nodeId;
+        this.members = List.copyOf(members);
+        this.consumed = new long[members.size()];
+        this.heard = new boolean[members.size()];
+        this.ration = Math.ceilDiv(rate, members.size());
+
+        this.channel = DatagramChannel.open().bind(members.get(nodeId));
+        this.receiver = Thread.ofVirtual().name("cluster-receiver-" + nodeId).start(this::receiveLoop);
+        this.gossip = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("cluster-gossip-" + nodeId).factory());
+        gossip.scheduleAtFixedRate(
+                this::gossipQuietly, gossipIntervalNanos, gossipIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized AcquireResult tryAcquire(long nowNanos, long permits) {
+        validatePermits(permits);
+        rollWindow(Math.floorDiv(nowNanos, windowSizeNanos));
+
+        if (sum() + permits > rate || grantedThisRound + permits > ration) {
+            return new AcquireResult.Rejected(retryAfterNanosInternal(nowNanos, permits));
+        }
+        consumed[nodeId] += permits;
+        grantedThisRound += permits;
+        return new AcquireResult.Acquired(permits);
+    }
+
+    @Override
+    public synchronized long availableTokens(long nowNanos) {
+        if (Math.floorDiv(nowNanos, windowSizeNanos) > window) {
+            return Math.min(rate, Math.ceilDiv(rate, members.size())); // the ration a new window starts with
+        }
+        return Math.max(0, Math.min(rate - sum(), ration - grantedThisRound));
+    }
+
+    @Override
+    public synchronized long retryAfterNanos(long nowNanos, long permits) {
+        validatePermits(permits);
+        if (Math.floorDiv(nowNanos, windowSizeNanos) > window) {
+            return 0;
+        }
+        return retryAfterNanosInternal(nowNanos, permits);
+    }
+
+    /** Epoch nanos from the wall clock, the same origin on every node. */
+    @Override
+    public long nowNanos() {
+        return epochNanos();
+    }
+
+    /** Permits granted cluster-wide in the window of {@code nowNanos}, as far as this node knows. */
+    public synchronized long consumed(long nowNanos) {
+        return Math.floorDiv(nowNanos, windowSizeNanos) == window ? sum() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        gossip.shutdownNow();
+        channel.close();
+        try {
+            receiver.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends this node's state to every other member and, if it has heard from all of them since the last renewal,
+     * starts a new ration round.
+     */
+    void gossipNow() throws IOException {
+        ByteBuffer message;
+        synchronized (this) {
+            if (heardFromAll()) {
+                ration = Math.max(0, Math.ceilDiv(rate - sum(), members.size()));
+                grantedThisRound = 0;
+                Arrays.fill(heard, false);
+            }
+            message = ByteBuffer.allocate(4 + 4 + 8 + 4 + 8 * consumed.length)
+                    .putInt(MAGIC)
+                    .putInt(nodeId)
+                    .putLong(window)
+                    .putInt(consumed.length);
+            for (long count : consumed) {
+                message.putLong(count);
+            }
+        }
+        message.flip();
+        for (int i = 0; i < members.size(); i++) {
+            if (i != nodeId) {
+                channel.send(message.rewind(), members.get(i));
+            }
+        }
+    }
+
+    private long retryAfterNanosInternal(long nowNanos, long permits) {
+        long headroom = rate - sum();
+        if (permits <= headroom && grantedThisRound + permits <= ration) {
+            return 0; // fits the current ration
+        }
+        long windowStartNanos = nowNanos - Math.floorMod(nowNanos, windowSizeNanos);
+        long untilNextWindowNanos = Utils.saturatedAdd(windowStartNanos, windowSizeNanos) - nowNanos;
+        if (permits > headroom || permits > Math.ceilDiv(headroom, members.size())) {
+            return untilNextWindowNanos; // not even the next ration can cover it
+        }
+        if (grantedThisRound + permits > ration) {
+            return Math.min(gossipIntervalNanos, untilNextWindowNanos);
+        }
+        return 0;
+    }
+
+    private void rollWindow(long nowWindow) {
+        if (nowWindow > window) {
+            Arrays.fill(consumed, 0);
+            window = nowWindow;
+            ration = Math.ceilDiv(rate, members.size());
+            grantedThisRound = 0;
+            Arrays.fill(heard, false);
+        }
+    }
+
+    private synchronized void merge(int sender, long remoteWindow, long[] remoteConsumed) {
+        if (remoteWindow > Math.max(window, Math.floorDiv(epochNanos(), windowSizeNanos)) + 1) {
+            return; // from the future: a broken clock would otherwise reset everyone's window
+        }
+        if (remoteWindow >= window) {
+            rollWindow(remoteWindow);
+            for (int i = 0; i < consumed.length; i++) {
+                consumed[i] = Math.max(consumed[i], remoteConsumed[i]);
+            }
+        }
+        // a sender still in an older window has granted nothing in this one, which is news as well
+        heard[sender] = true;
+    }
+
+    private boolean heardFromAll() {
+        for (int i = 0; i < heard.length; i++) {
+            if (i != nodeId && !heard[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long sum() {
+        long sum = 0;
+        for (long count : consumed) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 8 + 4 + 8 * consumed.length);
+        while (true) {
+            try {
+                buffer.clear();
+                SocketAddress source = channel.receive(buffer);
+                buffer.flip();
+                if (buffer.remaining() != buffer.capacity() || buffer.getInt() != MAGIC) {
+                    continue; // not ours
+                }
+                int sender = buffer.getInt();
+                if (sender < 0 || sender >= members.size() || sender == nodeId || !members.get(sender).equals(source)) {
+                    continue; // not sent by the member it claims to be
+                }
+                long remoteWindow = buffer.getLong();
+                if (buffer.getInt() != consumed.length) {
+                    continue; // a member configured with a different cluster
+                }
+                long[] remoteConsumed = new long[consumed.length];
+                buffer.asLongBuffer().get(remoteConsumed);
+                merge(sender, remoteWindow, remoteConsumed);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // one failed receive (e.g. an ICMP error reported on the socket) must not stop gossip for good
+                LOG.log(Level.WARNING, "Cluster node " + nodeId + " failed to receive gossip", e);
+            }
+        }
+    }
+
+    /** A throwing task would be cancelled by the executor, and this node would never gossip or renew again. */
+    private void gossipQuietly() {
+        try {
+            gossipNow();
+        } catch (ClosedChannelException e) {
+            // closing, the executor is being shut down as well
+        } catch (IOException | RuntimeException e) {
+            // the next round retries
+            LOG.log(Level.WARNING, "Cluster node " + nodeId + " failed to gossip", e);
+        }
+    }
+
+    private static long epochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    private void validatePermits(long permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Permits must be positive");
+        }
+        if (permits > Math.ceilDiv(rate, members.size())) {
+            throw new IllegalArgumentException("Permits exceed the per-node share of the rate");
+        }
+    }
+
+    private static void validateInitialParameters(
+            long rate, long windowSizeNanos, int nodeId, List<InetSocketAddress> members, long gossipIntervalNanos) {
+        if (rate <= 0 || windowSizeNanos <= 0 || gossipIntervalNanos <= 0) {
+            throw new IllegalArgumentException("Rate, window size, gossip interval must be positive");
+        }
+        if (nodeId < 0 || nodeId >= members.size()) {
+            throw new IllegalArgumentException("Node id must index members");
+        }
+    }
+}
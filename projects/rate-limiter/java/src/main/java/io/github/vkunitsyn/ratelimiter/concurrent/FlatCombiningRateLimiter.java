@@ -0,0 +1,154 @@
+package io.github.vkunitsyn.ratelimiter.concurrent;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Flat-combining front end for a hot limiter shared by many threads.
+ *
+ * <p>Instead of every thread taking the delegate's lock in turn, a thread publishes its request in a slot and
+ * whichever thread wins the combiner flag serves all published requests in one pass, reading the clock once
+ * for the whole batch; the others spin briefly until their answer appears. The delegate's lock is then taken
+ * by one thread in a row, which keeps it and the limiter state in that thread's cache, instead of bouncing
+ * between all cores on every acquisition. A thread that finds no free slot goes to the delegate directly.
+ *
+ * <p>Reads go straight to the delegate. Requests with an explicit {@code nowNanos} keep it; only the overloads
+ * without one share the combiner's clock reading.
+ */
+public class FlatCombiningRateLimiter implements RateLimiter {
+    // marks a request that takes the combiner's clock reading
+    private static final long COMBINER_NOW = Long.MIN_VALUE;
+    // marks a plain tryAcquire in place of the minimum of a tryAcquireUpTo
+    private static final long PLAIN = Long.MIN_VALUE;
+    private static final int PROBES = 4;
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    private final RateLimiter delegate;
+    private final AtomicReferenceArray<Request> slots;
+    private final AtomicBoolean combining = new AtomicBoolean();
+
+    /** One slot per available processor, twice over to keep collisions rare. */
+    public FlatCombiningRateLimiter(RateLimiter delegate) {
+        this(delegate, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    public FlatCombiningRateLimiter(RateLimiter delegate, int slots) {
+        if (slots <= 0) {
+            throw new IllegalArgumentException("Slots must be positive");
+        }
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.slots = new AtomicReferenceArray<>(Integer.highestOneBit(slots * 2 - 1));
+    }
+
+    @Override
+    public AcquireResult tryAcquire(long nowNanos, long permits) {
+        return combine(new Request(nowNanos, permits, PLAIN));
+    }
+
+    @Override
+    public AcquireResult tryAcquire(long permits) {
+        return combine(new Request(COMBINER_NOW, permits, PLAIN));
+    }
+
+    @Override
+    public AcquireResult tryAcquireUpTo(long nowNanos, long maxPermits, long minPermits) {
+        return combine(new Request(nowNanos, maxPermits, minPermits));
+    }
+
+    @Override
+    public AcquireResult tryAcquireUpTo(long maxPermits, long minPermits) {
+        return combine(new Request(COMBINER_NOW, maxPermits, minPermits));
+    }
+
+    @Override
+    public long availableTokens(long nowNanos) {
+        return delegate.availableTokens(nowNanos);
+    }
+
+    @Override
+    public long nowNanos() {
+        return delegate.nowNanos();
+    }
+
+    @Override
+    public long retryAfterNanos(long nowNanos, long permits) {
+        return delegate.retryAfterNanos(nowNanos, permits);
+    }
+
+    private AcquireResult combine(Request request) {
+        if (!publish(request)) {
+            return serve(request, request.nowNanos == COMBINER_NOW ? delegate.nowNanos() : request.nowNanos);
+        }
+        int spins = 0;
+        while (request.outcome == null) {
+            if (!combining.get() && combining.compareAndSet(false, true)) {
+                try {
+                    serveAll();
+                } finally {
+                    combining.set(false);
+                }
+            } else if (++spins % SPINS_BEFORE_YIELD == 0) {
+                Thread.yield();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        if (request.outcome instanceof RuntimeException e) {
+            throw e;
+        }
+        return (AcquireResult) request.outcome;
+    }
+
+    private boolean publish(Request request) {
+        int mask = slots.length() - 1;
+        int start = (int) Thread.currentThread().threadId() * 0x9E3779B9;
+        for (int i = 0; i < PROBES; i++) {
+            if (slots.compareAndSet((start + i) & mask, null, request)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Runs on the combiner only. */
+    private void serveAll() {
+        long combinerNowNanos = delegate.nowNanos();
+        for (int i = 0; i < slots.length(); i++) {
+            Request request = slots.get(i);
+            if (request == null) {
+                continue;
+            }
+            Object outcome;
+            try {
+                outcome = serve(request, combinerNowNanos);
+            } catch (RuntimeException e) {
+                outcome = e;
+            }
+            slots.set(i, null);
+            request.outcome = outcome;
+        }
+    }
+
+    private AcquireResult serve(Request request, long combinerNowNanos) {
+        long nowNanos = request.nowNanos == COMBINER_NOW ? combinerNowNanos : request.nowNanos;
+        return request.minPermits == PLAIN
+                ? delegate.tryAcquire(nowNanos, request.permits)
+                : delegate.tryAcquireUpTo(nowNanos, request.permits, request.minPermits);
+    }
+
+    private static final class Request {
+        final long nowNanos;
+        final long permits;
+        final long minPermits;
+        // AcquireResult, or the RuntimeException the delegate threw
+        volatile Object outcome;
+
+        Request(long nowNanos, long permits, long minPermits) {
+            this.nowNanos = nowNanos;
+            this.permits = permits;
+            this.minPermits = minPermits;
+        }
+    }
+}
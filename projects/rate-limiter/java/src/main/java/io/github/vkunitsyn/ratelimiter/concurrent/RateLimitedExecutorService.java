@@ -0,0 +1,266 @@
+package io.github.vkunitsyn.ratelimiter.concurrent;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+import io.github.vkunitsyn.ratelimiter.SpacingLeakyBucket;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shapes traffic instead of dropping it: tasks wait in a bounded queue and one dispatcher thread releases them to
+ * the delegate as fast as the limiter allows, one permit per task. With a {@link SpacingLeakyBucket} that means
+ * exact intervals between task starts.
+ *
+ * <p>The dispatcher parks until the limiter's retry-after instead of sleeping per task, and releases every task
+ * that is eligible at once as one batch. Shutting down drains the queue at the limited pace, then shuts down the
+ * delegate.
+ *
+ * <p>If the delegate rejects a task or the limiter throws, the dispatcher stops the executor: new tasks are rejected,
+ * tasks not handed to the delegate stay queued for {@link #shutdownNow()}, and those that are {@link Future}s are
+ * cancelled so nobody waits for them forever.
+ */
+public final class RateLimitedExecutorService extends AbstractExecutorService {
+    /** What {@code execute} does when the queue is full. */
+    public enum OverflowPolicy {
+        /** Throw {@link RejectedExecutionException}. */
+        REJECT,
+        /** Wait for space in the queue. */
+        BLOCK,
+        /** Drop (and cancel, if it is a {@link Future}) the oldest queued task to make room. */
+        DISCARD_OLDEST
+    }
+
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+    private static final int STOP = 2;
+
+    private final RateLimiter limiter;
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final ExecutorService delegate;
+    private final Thread dispatcher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dispatchable = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private int state = RUNNING;
+
+    /** Paces tasks {@code interval} apart, with bursts of up to {@code maxBurst}, onto virtual threads. */
+    public RateLimitedExecutorService(
+            Duration interval, long maxBurst, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this(
+                new SpacingLeakyBucket(maxBurst, interval.toNanos()),
+                queueCapacity,
+                overflowPolicy,
+                Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public RateLimitedExecutorService(
+            RateLimiter limiter, int queueCapacity, OverflowPolicy overflowPolicy, ExecutorService delegate) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        this.limiter = Objects.requireNonNull(limiter, "limiter");
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "overflowPolicy");
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.dispatcher = Thread.ofPlatform()
+                .daemon()
+                .name("rate-limited-dispatcher")
+                .unstarted(this::dispatchLoop);
+        dispatcher.start();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Objects.requireNonNull(task, "task");
+        lock.lock();
+        try {
+            while (true) {
+                if (state != RUNNING) {
+                    throw new RejectedExecutionException("Executor is shut down");
+                }
+                if (queue.size() < queueCapacity) {
+                    queue.addLast(task);
+                    dispatchable.signal();
+                    return;
+                }
+                switch (overflowPolicy) {
+                    case REJECT -> throw new RejectedExecutionException("Queue is full");
+                    case DISCARD_OLDEST -> {
+                        if (queue.pollFirst() instanceof Future<?> future) {
+                            future.cancel(false);
+                        }
+                    }
+                    case BLOCK -> {
+                        try {
+                            notFull.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("Interrupted while waiting for queue space", e);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Number of tasks waiting for a permit. */
+    public int queued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            if (state == RUNNING) {
+                state = SHUTDOWN;
+            }
+            dispatchable.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending;
+        lock.lock();
+        try {
+            state = STOP;
+            pending = new ArrayList<>(queue);
+            queue.clear();
+            dispatchable.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        delegate.shutdownNow();
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return state != RUNNING;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return !dispatcher.isAlive() && delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        if (!dispatcher.join(Duration.ofNanos(unit.toNanos(timeout)))) {
+            return false;
+        }
+        return delegate.awaitTermination(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private void dispatchLoop() {
+        List<Runnable> batch = new ArrayList<>();
+        int dispatched = 0;
+        long readyAtNanos = limiter.nowNanos();
+        try {
+            while (true) {
+                lock.lock();
+                try {
+                    while (queue.isEmpty() && state == RUNNING) {
+                        dispatchable.awaitUninterruptibly();
+                    }
+                    if (state == STOP || queue.isEmpty()) {
+                        break;
+                    }
+                    long nowNanos = limiter.nowNanos();
+                    if (nowNanos - readyAtNanos < 0) {
+                        // new tasks wake us up, but the limiter has already said when the next permit is due
+                        awaitUninterruptibly(readyAtNanos - nowNanos);
+                        continue;
+                    }
+                    // everything that is eligible now goes out together
+                    while (!queue.isEmpty()) {
+                        AcquireResult result = limiter.tryAcquire(nowNanos, 1);
+                        if (!result.isAcquired()) {
+                            readyAtNanos = nowNanos + Math.max(1, result.retryAfterNanos());
+                            break;
+                        }
+                        batch.add(queue.pollFirst());
+                    }
+                    if (batch.isEmpty()) {
+                        continue;
+                    }
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                try {
+                    for (; dispatched < batch.size(); dispatched++) {
+                        delegate.execute(batch.get(dispatched));
+                    }
+                } catch (RejectedExecutionException e) {
+                    break; // shutdownNow raced with this batch, or the delegate is full or shut down on its own
+                }
+                batch.clear();
+                dispatched = 0;
+            }
+        } finally {
+            stop(batch.subList(dispatched, batch.size()));
+            delegate.shutdown();
+        }
+    }
+
+    /** Rejects new tasks from now on; {@code undispatched} go back to the queue, their futures cancelled. */
+    private void stop(List<Runnable> undispatched) {
+        lock.lock();
+        try {
+            state = STOP;
+            for (int i = undispatched.size() - 1; i >= 0; i--) {
+                queue.addFirst(undispatched.get(i));
+            }
+            for (Runnable task : queue) {
+                if (task instanceof Future<?> future) {
+                    future.cancel(false);
+                }
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitUninterruptibly(long nanos) {
+        try {
+            dispatchable.awaitNanos(nanos);
+        } catch (InterruptedException e) {
+            // the dispatcher is never interrupted on purpose, shutdown signals the condition instead
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package io.github.vkunitsyn.ratelimiter.concurrent;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Passes items through unchanged, each one charged {@code weigher.applyAsLong(item)} permits, at the pace of the
+ * limiter.
+ *
+ * <p>Backpressure: upstream is only ever asked for as many items as fit into a buffer of {@code bufferSize}; freed
+ * slots are requested again once at least {@code requestBatch} items have been let through. A limiter that runs dry
+ * therefore stops upstream instead of growing a queue.
+ *
+ * <p>Items are released in batches: up to {@code maxBatch} buffered items (as far as downstream demand and the
+ * limiter's available tokens go) are paid for with a single {@code tryAcquire}. When the limiter rejects, the
+ * processor waits for the advertised retry-after on a timer rather than a blocked thread.
+ *
+ * <p>Supports a single downstream subscriber. Errors from upstream are forwarded immediately, completion after the
+ * buffer has drained.
+ */
+public class RateLimitingProcessor<T> implements Flow.Processor<T, T> {
+    private final RateLimiter limiter;
+    private final ToLongFunction<? super T> weigher;
+    private final int bufferSize;
+    private final int requestBatch;
+    private final int maxBatch;
+
+    private final ArrayDeque<T> buffer = new ArrayDeque<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicBoolean waitingForLimiter = new AtomicBoolean();
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super T> downstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+
+    // touched only inside drain()
+    private boolean terminated;
+    private int releasedSinceRequest;
+
+    /** Every item costs one permit. */
+    public RateLimitingProcessor(RateLimiter limiter, int bufferSize) {
+        this(limiter, item -> 1, bufferSize, Math.max(1, bufferSize / 2), bufferSize);
+    }
+
+    /**
+     * @param weigher permits an item costs, positive and within what the limiter can grant at once
+     * @param requestBatch freed buffer slots to collect before requesting more from upstream
+     * @param maxBatch most items released per limiter call
+     */
+    public RateLimitingProcessor(
+            RateLimiter limiter, ToLongFunction<? super T> weigher, int bufferSize, int requestBatch, int maxBatch) {
+        if (bufferSize <= 0 || requestBatch <= 0 || maxBatch <= 0) {
+            throw new IllegalArgumentException("Buffer size, request batch, max batch must be positive");
+        }
+        if (requestBatch > bufferSize) {
+            throw new IllegalArgumentException("Request batch cannot exceed buffer size");
+        }
+        this.limiter = Objects.requireNonNull(limiter, "limiter");
+        this.weigher = Objects.requireNonNull(weigher, "weigher");
+        this.bufferSize = bufferSize;
+        this.requestBatch = requestBatch;
+        this.maxBatch = maxBatch;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        synchronized (this) {
+            if (downstream != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {}
+
+                    @Override
+                    public void cancel() {}
+                });
+                subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+                return;
+            }
+            downstream = subscriber;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    onError(new IllegalArgumentException("Requested items must be positive"));
+                    return;
+                }
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                Flow.Subscription subscription = upstream;
+                if (subscription != null) {
+                    subscription.cancel();
+                }
+                drain();
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this) {
+            if (upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+        }
+        if (cancelled) {
+            subscription.cancel();
+            return;
+        }
+        subscription.request(bufferSize);
+    }
+
+    @Override
+    public void onNext(T item) {
+        synchronized (buffer) {
+            buffer.addLast(item);
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    /** Runs at most one emit loop at a time; calls that arrive meanwhile make it loop once more. */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super T> subscriber = downstream;
+            if (subscriber != null && !terminated) {
+                emit(subscriber);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emit(Flow.Subscriber<? super T> subscriber) {
+        while (true) {
+            if (cancelled) {
+                synchronized (buffer) {
+                    buffer.clear();
+                }
+                terminated = true;
+                return;
+            }
+            Throwable failure = error;
+            if (failure != null) {
+                terminate(subscriber, failure);
+                return;
+            }
+            boolean empty;
+            synchronized (buffer) {
+                empty = buffer.isEmpty();
+            }
+            if (empty) {
+                if (upstreamDone) {
+                    terminated = true;
+                    subscriber.onComplete();
+                }
+                return;
+            }
+            long requested = demand.get();
+            if (requested == 0 || waitingForLimiter.get()) {
+                return;
+            }
+
+            int released;
+            try {
+                released = releaseBatch(subscriber, requested);
+            } catch (RuntimeException e) {
+                terminate(subscriber, e);
+                return;
+            }
+            if (released == 0) {
+                return; // the limiter said no, a timer will call drain() again
+            }
+            if (requested != Long.MAX_VALUE) {
+                demand.addAndGet(-released);
+            }
+            releasedSinceRequest += released;
+            if (releasedSinceRequest >= requestBatch && !upstreamDone) {
+                upstream.request(releasedSinceRequest);
+                releasedSinceRequest = 0;
+            }
+        }
+    }
+
+    /** Pays for and emits as many head items as demand, {@code maxBatch} and the limiter allow at once. */
+    private int releaseBatch(Flow.Subscriber<? super T> subscriber, long requested) {
+        long nowNanos = limiter.nowNanos();
+        long available = limiter.availableTokens(nowNanos);
+        long limit = Math.min(requested, maxBatch);
+
+        int count = 0;
+        long permits = 0;
+        synchronized (buffer) {
+            Iterator<T> items = buffer.iterator();
+            while (count < limit && items.hasNext()) {
+                long weight = weigher.applyAsLong(items.next());
+                // the head item is always tried, even if it cannot pass now, to learn when it can
+                if (count > 0 && permits + weight > available) {
+                    break;
+                }
+                permits += weight;
+                count++;
+            }
+        }
+
+        AcquireResult result = limiter.tryAcquire(nowNanos, permits);
+        if (!result.isAcquired()) {
+            waitingForLimiter.set(true);
+            CompletableFuture.delayedExecutor(Math.max(1, result.retryAfterNanos()), TimeUnit.NANOSECONDS)
+                    .execute(() -> {
+                        waitingForLimiter.set(false);
+                        drain();
+                    });
+            return 0;
+        }
+        for (int i = 0; i < count; i++) {
+            T item;
+            synchronized (buffer) {
+                item = buffer.pollFirst();
+            }
+            subscriber.onNext(item);
+        }
+        return count;
+    }
+
+    private void terminate(Flow.Subscriber<? super T> subscriber, Throwable failure) {
+        terminated = true;
+        Flow.Subscription subscription = upstream;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        synchronized (buffer) {
+            buffer.clear();
+        }
+        subscriber.onError(failure);
+    }
+}
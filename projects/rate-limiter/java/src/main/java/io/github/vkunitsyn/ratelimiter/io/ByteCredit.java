@@ -0,0 +1,68 @@
+package io.github.vkunitsyn.ratelimiter.io;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import java.io.InterruptedIOException;
+import java.util.Objects;
+
+/**
+ * Bytes acquired from the limiter but not transferred yet. Permits are acquired in chunks that start at
+ * {@link #MIN_CHUNK_BYTES} (or the pending transfer, if larger) and double while the transfer goes on, up to
+ * {@code maxChunkBytes}. A long copy thus costs one limiter call per {@code maxChunkBytes}, a stream of tiny reads
+ * or writes no more than one per {@code MIN_CHUNK_BYTES}; the price is up to one chunk paid for but unused when
+ * the transfer stops.
+ *
+ * <p>Not thread-safe, like the streams and channels it serves; the limiter itself may be shared.
+ */
+final class ByteCredit {
+    static final int MIN_CHUNK_BYTES = 64 * 1024;
+
+    private final RateLimiter limiter;
+    private final long minChunkBytes;
+    private final long maxChunkBytes;
+    private long credit;
+    private long lastChunkBytes;
+
+    /** @param maxChunkBytes most bytes acquired at once, must not exceed the burst the limiter allows */
+    ByteCredit(RateLimiter limiter, long maxChunkBytes) {
+        if (maxChunkBytes <= 0) {
+            throw new IllegalArgumentException("Max chunk must be positive");
+        }
+        this.limiter = Objects.requireNonNull(limiter, "limiter");
+        this.maxChunkBytes = maxChunkBytes;
+        this.minChunkBytes = Math.min(MIN_CHUNK_BYTES, maxChunkBytes);
+    }
+
+    /**
+     * Blocks until there is credit, then returns how many of the {@code wanted} bytes may be transferred now:
+     * at least 1 if {@code wanted > 0}. Report what was actually transferred with {@link #consume(long)}.
+     */
+    long reserve(long wanted) throws InterruptedIOException {
+        return reserve(wanted, Long.MAX_VALUE);
+    }
+
+    /** Same as {@link #reserve(long)}, but never acquires more than the {@code remaining} bytes of a transfer. */
+    long reserve(long wanted, long remaining) throws InterruptedIOException {
+        if (wanted <= 0) {
+            return 0;
+        }
+        if (credit == 0) {
+            long chunk = Math.clamp(Math.max(wanted, 2 * lastChunkBytes), minChunkBytes, maxChunkBytes);
+            chunk = Math.min(chunk, Math.max(wanted, remaining));
+            try {
+                limiter.acquire(chunk);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + chunk + " bytes of bandwidth");
+            }
+            credit = chunk;
+            lastChunkBytes = chunk;
+        }
+        return Math.min(wanted, credit);
+    }
+
+    void consume(long bytes) {
+        if (bytes > 0) {
+            credit -= bytes;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.vkunitsyn.ratelimiter.io;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Limits how fast bytes are read from {@code in}, one permit per byte, see {@link ByteCredit}. */
+public class ThrottledInputStream extends FilterInputStream {
+    private final ByteCredit credit;
+
+    /** @param maxChunkBytes most bytes acquired at once, must not exceed the burst the limiter allows */
+    public ThrottledInputStream(InputStream in, RateLimiter limiter, long maxChunkBytes) {
+        super(in);
+        this.credit = new ByteCredit(limiter, maxChunkBytes);
+    }
+
+    @Override
+    public int read() throws IOException {
+        credit.reserve(1);
+        int b = in.read();
+        if (b >= 0) {
+            credit.consume(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int allowed = (int) credit.reserve(len);
+        int read = in.read(b, off, allowed);
+        credit.consume(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(credit.reserve(n));
+        credit.consume(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false; // re-reading marked bytes would be charged twice
+    }
+}
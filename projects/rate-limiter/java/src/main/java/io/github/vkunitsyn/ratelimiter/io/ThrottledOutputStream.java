@@ -0,0 +1,35 @@
+package io.github.vkunitsyn.ratelimiter.io;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Limits how fast bytes are written to {@code out}, one permit per byte, see {@link ByteCredit}. */
+public class ThrottledOutputStream extends FilterOutputStream {
+    private final ByteCredit credit;
+
+    /** @param maxChunkBytes most bytes acquired at once, must not exceed the burst the limiter allows */
+    public ThrottledOutputStream(OutputStream out, RateLimiter limiter, long maxChunkBytes) {
+        super(out);
+        this.credit = new ByteCredit(limiter, maxChunkBytes);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        credit.reserve(1);
+        out.write(b);
+        credit.consume(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int allowed = (int) credit.reserve(len);
+            out.write(b, off, allowed);
+            credit.consume(allowed);
+            off += allowed;
+            len -= allowed;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.vkunitsyn.ratelimiter.io;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
+
+/** Limits how fast bytes are read from {@code channel}, one permit per byte, see {@link ByteCredit}. */
+public class ThrottledReadableByteChannel implements ReadableByteChannel {
+    private final ReadableByteChannel channel;
+    private final ByteCredit credit;
+
+    /** @param maxChunkBytes most bytes acquired at once, must not exceed the burst the limiter allows */
+    public ThrottledReadableByteChannel(ReadableByteChannel channel, RateLimiter limiter, long maxChunkBytes) {
+        this.channel = Objects.requireNonNull(channel, "channel");
+        this.credit = new ByteCredit(limiter, maxChunkBytes);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int allowed = (int) credit.reserve(dst.remaining());
+        int limit = dst.limit();
+        dst.limit(dst.position() + allowed);
+        try {
+            int read = channel.read(dst);
+            credit.consume(read);
+            return read;
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
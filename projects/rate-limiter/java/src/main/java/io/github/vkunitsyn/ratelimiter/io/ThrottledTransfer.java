@@ -0,0 +1,48 @@
+package io.github.vkunitsyn.ratelimiter.io;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Rate-limited {@link FileChannel#transferTo}: the copy still goes through the zero-copy path (e.g. sendfile),
+ * split into chunks that are each paid for before they are handed to the kernel.
+ *
+ * <p>Credit belongs to this object, not to one call: bytes paid for but not taken by a full non-blocking target
+ * pay for the next transfer. Reuse one instance for a sequence of transfers; not thread-safe, like the channels.
+ */
+public final class ThrottledTransfer {
+    private final ByteCredit credit;
+
+    /** @param maxChunkBytes most bytes acquired at once, must not exceed the burst the limiter allows */
+    public ThrottledTransfer(RateLimiter limiter, long maxChunkBytes) {
+        this.credit = new ByteCredit(limiter, maxChunkBytes);
+    }
+
+    /**
+     * Transfers {@code count} bytes of {@code source} starting at {@code position}, or fewer if the file ends or a
+     * non-blocking target is full. Unlike the streams, no credit is acquired beyond the last byte of the transfer.
+     *
+     * @return number of bytes transferred
+     */
+    public long transferTo(FileChannel source, long position, long count, WritableByteChannel target)
+            throws IOException {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("Position, count must not be negative");
+        }
+        long total = Math.min(count, Math.max(0, source.size() - position));
+        long transferred = 0;
+        while (transferred < total) {
+            long remaining = total - transferred;
+            long chunk = credit.reserve(remaining, remaining);
+            long sent = source.transferTo(position + transferred, chunk, target);
+            credit.consume(sent);
+            transferred += sent;
+            if (sent == 0) {
+                break; // a non-blocking target is full, let the caller come back; the credit stays for then
+            }
+        }
+        return transferred;
+    }
+}
@@ -0,0 +1,44 @@
+package io.github.vkunitsyn.ratelimiter.io;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+
+/** Limits how fast bytes are written to {@code channel}, one permit per byte, see {@link ByteCredit}. */
+public class ThrottledWritableByteChannel implements WritableByteChannel {
+    private final WritableByteChannel channel;
+    private final ByteCredit credit;
+
+    /** @param maxChunkBytes most bytes acquired at once, must not exceed the burst the limiter allows */
+    public ThrottledWritableByteChannel(WritableByteChannel channel, RateLimiter limiter, long maxChunkBytes) {
+        this.channel = Objects.requireNonNull(channel, "channel");
+        this.credit = new ByteCredit(limiter, maxChunkBytes);
+    }
+
+    /** Writes at most one chunk of credit, like a non-blocking channel the caller loops until done. */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int allowed = (int) credit.reserve(src.remaining());
+        int limit = src.limit();
+        src.limit(src.position() + allowed);
+        try {
+            int written = channel.write(src);
+            credit.consume(written);
+            return written;
+        } finally {
+            src.limit(limit);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,22 @@
+package io.github.vkunitsyn.ratelimiter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name(AcquireWaitEvent.NAME)
+@Label("Acquire Wait")
+@Category("Rate Limiter")
+@Description("A blocking acquire that waited longer than the threshold")
+@Threshold("10 ms")
+public final class AcquireWaitEvent extends jdk.jfr.Event {
+    public static final String NAME = "io.github.vkunitsyn.ratelimiter.AcquireWait";
+
+    @Label("Limiter")
+    String limiter;
+
+    @Label("Permits")
+    long permits;
+}
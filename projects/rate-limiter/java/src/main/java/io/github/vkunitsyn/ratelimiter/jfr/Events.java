@@ -0,0 +1,44 @@
+package io.github.vkunitsyn.ratelimiter.jfr;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Emits the events; each method is a cheap no-op while its event is disabled in every recording. */
+final class Events {
+    private Events() {}
+
+    static void rejected(String limiter, Object key, long permits, long retryAfterNanos) {
+        RejectedAcquireEvent event = new RejectedAcquireEvent();
+        if (event.shouldCommit()) {
+            event.limiter = limiter;
+            event.key = key == null ? null : key.toString();
+            event.permits = permits;
+            event.retryAfterNanos = retryAfterNanos;
+            event.commit();
+        }
+    }
+
+    static void acquired(String limiter, Object key, long permits, int samplingInterval) {
+        // while no recording enables the event the accept path draws no random number; then only sampled calls commit
+        SampledAcquireEvent event = new SampledAcquireEvent();
+        if (!event.isEnabled()
+                || samplingInterval > 1 && ThreadLocalRandom.current().nextInt(samplingInterval) != 0) {
+            return;
+        }
+        if (event.shouldCommit()) {
+            event.limiter = limiter;
+            event.key = key == null ? null : key.toString();
+            event.permits = permits;
+            event.samplingInterval = samplingInterval;
+            event.commit();
+        }
+    }
+
+    static void validate(String name, int samplingInterval) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Name must not be empty");
+        }
+        if (samplingInterval <= 0) {
+            throw new IllegalArgumentException("Sampling interval must be positive");
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.vkunitsyn.ratelimiter.jfr;
+
+import io.github.vkunitsyn.ratelimiter.KeyedRateLimiter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+import java.util.Objects;
+
+/**
+ * Keyed counterpart of {@link JfrRateLimiter}: rejections and sampled acquisitions carry the key. There is no
+ * periodic state event, a keyed limiter has no single number of available tokens.
+ */
+public class JfrKeyedRateLimiter<K> implements KeyedRateLimiter<K> {
+    private final String name;
+    private final KeyedRateLimiter<K> delegate;
+    private final int samplingInterval;
+
+    public JfrKeyedRateLimiter(String name, KeyedRateLimiter<K> delegate) {
+        this(name, delegate, JfrRateLimiter.DEFAULT_SAMPLING_INTERVAL);
+    }
+
+    public JfrKeyedRateLimiter(String name, KeyedRateLimiter<K> delegate, int samplingInterval) {
+        Events.validate(name, samplingInterval);
+        this.name = name;
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.samplingInterval = samplingInterval;
+    }
+
+    @Override
+    public AcquireResult tryAcquire(K key, long nowNanos, long permits) {
+        AcquireResult result = delegate.tryAcquire(key, nowNanos, permits);
+        if (result.isAcquired()) {
+            Events.acquired(name, key, permits, samplingInterval);
+        } else {
+            Events.rejected(name, key, permits, result.retryAfterNanos());
+        }
+        return result;
+    }
+
+    @Override
+    public long availableTokens(K key, long nowNanos) {
+        return delegate.availableTokens(key, nowNanos);
+    }
+
+    @Override
+    public long retryAfterNanos(K key, long nowNanos, long permits) {
+        return delegate.retryAfterNanos(key, nowNanos, permits);
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.vkunitsyn.ratelimiter.jfr;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Reports what a {@link RateLimiter} does to Java Flight Recorder: every rejection, one in
+ * {@code samplingInterval} granted acquisitions, blocking acquires that waited longer than the
+ * {@link AcquireWaitEvent} threshold and, periodically, the number of available tokens.
+ *
+ * <p>Events are regular JFR events, so they can be enabled and tuned in a {@code .jfc} settings file and consumed
+ * live with {@link jdk.jfr.consumer.RecordingStream}. One periodic hook serves every instance and only holds them
+ * weakly, so a limiter that is never closed is still collected; closing it stops its state event right away.
+ */
+public class JfrRateLimiter implements RateLimiter, AutoCloseable {
+    public static final int DEFAULT_SAMPLING_INTERVAL = 1_000;
+
+    // open instances, for the one shared periodic hook
+    private static final Set<JfrRateLimiter> LIVE =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    static {
+        FlightRecorder.addPeriodicEvent(LimiterStateEvent.class, JfrRateLimiter::emitStates);
+    }
+
+    private final String name;
+    private final RateLimiter delegate;
+    private final int samplingInterval;
+
+    public JfrRateLimiter(String name, RateLimiter delegate) {
+        this(name, delegate, DEFAULT_SAMPLING_INTERVAL);
+    }
+
+    public JfrRateLimiter(String name, RateLimiter delegate, int samplingInterval) {
+        Events.validate(name, samplingInterval);
+        this.name = name;
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.samplingInterval = samplingInterval;
+        LIVE.add(this);
+    }
+
+    @Override
+    public AcquireResult tryAcquire(long nowNanos, long permits) {
+        return recorded(delegate.tryAcquire(nowNanos, permits), permits);
+    }
+
+    @Override
+    public AcquireResult tryAcquireUpTo(long nowNanos, long maxPermits, long minPermits) {
+        return recorded(delegate.tryAcquireUpTo(nowNanos, maxPermits, minPermits), minPermits);
+    }
+
+    @Override
+    public long availableTokens(long nowNanos) {
+        return delegate.availableTokens(nowNanos);
+    }
+
+    @Override
+    public long retryAfterNanos(long nowNanos, long permits) {
+        return delegate.retryAfterNanos(nowNanos, permits);
+    }
+
+    @Override
+    public long nowNanos() {
+        return delegate.nowNanos();
+    }
+
+    @Override
+    public long acquire(long permits) throws InterruptedException {
+        AcquireWaitEvent event = new AcquireWaitEvent();
+        event.begin();
+        long waitedNanos = delegate.acquire(permits);
+        event.end();
+        if (event.shouldCommit()) {
+            event.limiter = name;
+            event.permits = permits;
+            event.commit();
+        }
+        return waitedNanos;
+    }
+
+    @Override
+    public void close() {
+        LIVE.remove(this);
+    }
+
+    /** Records a grant with the permits it got, a rejection with the least it asked for. */
+    private AcquireResult recorded(AcquireResult result, long minPermits) {
+        if (result instanceof AcquireResult.Acquired(long permits)) {
+            Events.acquired(name, null, permits, samplingInterval);
+        } else {
+            Events.rejected(name, null, minPermits, result.retryAfterNanos());
+        }
+        return result;
+    }
+
+    private static void emitStates() {
+        List<JfrRateLimiter> limiters;
+        synchronized (LIVE) {
+            limiters = List.copyOf(LIVE);
+        }
+        // outside the lock: a delegate's availableTokens may block
+        for (JfrRateLimiter limiter : limiters) {
+            limiter.emitState();
+        }
+    }
+
+    private void emitState() {
+        LimiterStateEvent event = new LimiterStateEvent();
+        event.limiter = name;
+        event.availableTokens = delegate.availableTokens();
+        event.commit();
+    }
+}
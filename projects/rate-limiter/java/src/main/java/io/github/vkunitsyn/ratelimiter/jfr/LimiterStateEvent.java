@@ -0,0 +1,22 @@
+package io.github.vkunitsyn.ratelimiter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+@Name(LimiterStateEvent.NAME)
+@Label("Limiter State")
+@Category("Rate Limiter")
+@Period("1 s")
+@StackTrace(false)
+public final class LimiterStateEvent extends jdk.jfr.Event {
+    public static final String NAME = "io.github.vkunitsyn.ratelimiter.LimiterState";
+
+    @Label("Limiter")
+    String limiter;
+
+    @Label("Available Tokens")
+    long availableTokens;
+}
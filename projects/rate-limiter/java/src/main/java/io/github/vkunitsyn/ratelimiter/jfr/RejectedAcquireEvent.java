@@ -0,0 +1,30 @@
+package io.github.vkunitsyn.ratelimiter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name(RejectedAcquireEvent.NAME)
+@Label("Rejected Acquire")
+@Category("Rate Limiter")
+@Description("A tryAcquire call that was rejected")
+@StackTrace(false)
+public final class RejectedAcquireEvent extends jdk.jfr.Event {
+    public static final String NAME = "io.github.vkunitsyn.ratelimiter.RejectedAcquire";
+
+    @Label("Limiter")
+    String limiter;
+
+    @Label("Key")
+    String key;
+
+    @Label("Permits")
+    long permits;
+
+    @Label("Retry After")
+    @Timespan(Timespan.NANOSECONDS)
+    long retryAfterNanos;
+}
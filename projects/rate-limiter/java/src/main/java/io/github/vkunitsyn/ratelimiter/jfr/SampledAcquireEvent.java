@@ -0,0 +1,28 @@
+package io.github.vkunitsyn.ratelimiter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(SampledAcquireEvent.NAME)
+@Label("Sampled Acquire")
+@Category("Rate Limiter")
+@Description("One in every N granted tryAcquire calls, N is the sampling interval of the limiter")
+@StackTrace(false)
+public final class SampledAcquireEvent extends jdk.jfr.Event {
+    public static final String NAME = "io.github.vkunitsyn.ratelimiter.SampledAcquire";
+
+    @Label("Limiter")
+    String limiter;
+
+    @Label("Key")
+    String key;
+
+    @Label("Permits")
+    long permits;
+
+    @Label("Sampling Interval")
+    int samplingInterval;
+}
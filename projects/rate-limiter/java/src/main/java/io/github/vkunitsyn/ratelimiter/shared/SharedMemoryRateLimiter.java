@@ -0,0 +1,316 @@
+package io.github.vkunitsyn.ratelimiter.shared;
+
+import io.github.vkunitsyn.ratelimiter.KeyedRateLimiter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+import io.github.vkunitsyn.ratelimiter.Utils;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Limiter state shared by all processes on a host through a memory-mapped file: every JVM that opens the same
+ * file with the same configuration enforces one common limit per key, with no IPC round trips.
+ *
+ * <p>Each slot is a single {@code long} updated with a compare-and-set through a {@link VarHandle} on the mapped
+ * {@link MemorySegment}, which is atomic across processes because they map the same physical pages. Slots are
+ * padded to a cache line of their own. Keys are hashed onto slots with {@link String#hashCode()}, which is the
+ * same in every JVM; keys that share a slot share its limit, so size {@code slots} well above the key count.
+ *
+ * <p>The file starts with a header holding a magic number, the layout version, header and slot sizes and the
+ * limiter configuration. The first process creates it under a file lock, later ones verify it, so two processes
+ * can never silently interpret the same slots differently.
+ *
+ * <p>{@code nowNanos} must be comparable across processes: the overloads without it, and blocking {@code acquire} on
+ * a {@link #slot(int)}, use epoch nanos from the wall clock, not {@link System#nanoTime()}.
+ */
+public final class SharedMemoryRateLimiter implements KeyedRateLimiter<String>, AutoCloseable {
+    /** How a slot's {@code long} is interpreted. */
+    public enum Algorithm {
+        /**
+         * GCRA, i.e. a token bucket of {@code limit} tokens refilled smoothly with one token every
+         * {@code periodNanos}; the slot holds the theoretical arrival time, like {@code SpacingLeakyBucket}.
+         */
+        GCRA,
+        /**
+         * At most {@code limit} permits per aligned window of {@code periodNanos}; the slot holds the low 32 bits of
+         * the window number and the permits used in it. A slot idle for a multiple of 2^32 windows, about 50 days for
+         * millisecond windows, reads its old usage back.
+         */
+        FIXED_WINDOW
+    }
+
+    private static final int MAGIC = 0x52_4C_53_4D; // "RLSM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 64;
+    private static final VarHandle LONG = ValueLayout.JAVA_LONG.varHandle();
+    // how far a fixed-window tag may be ahead of nowNanos and still count: a racing process already in the next window
+    private static final int MAX_WINDOWS_AHEAD = 1;
+
+    private final Algorithm algorithm;
+    private final long limit;
+    private final long periodNanos;
+    private final int slots;
+    private final FileChannel channel;
+    private final Arena arena;
+    private final MemorySegment segment;
+
+    /**
+     * Opens {@code file}, creating it if it does not exist yet.
+     *
+     * @throws IllegalArgumentException if the file was created with a different configuration
+     */
+    public SharedMemoryRateLimiter(Path file, Algorithm algorithm, long limit, long periodNanos, int slots)
+            throws IOException {
+        validateInitialParameters(algorithm, limit, periodNanos, slots);
+        this.algorithm = algorithm;
+        this.limit = limit;
+        this.periodNanos = periodNanos;
+        this.slots = slots;
+
+        long size = HEADER_SIZE + (long) SLOT_SIZE * slots;
+        this.channel = FileChannel.open(
+                file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // serializes creation against other processes opening the file at the same time
+            FileLock lock = channel.lock();
+            try {
+                if (channel.size() == 0) {
+                    writeHeader(size);
+                } else {
+                    verifyHeader(size);
+                }
+            } finally {
+                lock.release();
+            }
+            this.arena = Arena.ofShared();
+            this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public AcquireResult tryAcquire(String key, long nowNanos, long permits) {
+        return tryAcquire(slotOf(key), nowNanos, permits);
+    }
+
+    @Override
+    public long availableTokens(String key, long nowNanos) {
+        return availableTokens(slotOf(key), nowNanos);
+    }
+
+    @Override
+    public long retryAfterNanos(String key, long nowNanos, long permits) {
+        return retryAfterNanos(slotOf(key), nowNanos, permits);
+    }
+
+    @Override
+    public AcquireResult tryAcquire(String key, long permits) {
+        return tryAcquire(key, epochNanos(), permits);
+    }
+
+    @Override
+    public long availableTokens(String key) {
+        return availableTokens(key, epochNanos());
+    }
+
+    @Override
+    public long retryAfterNanos(String key, long permits) {
+        return retryAfterNanos(key, epochNanos(), permits);
+    }
+
+    /** The limiter of one slot, e.g. slot 0 of a one-slot file for a single per-host limit. */
+    public RateLimiter slot(int slot) {
+        if (slot < 0 || slot >= slots) {
+            throw new IllegalArgumentException("Slot out of range");
+        }
+        return new RateLimiter() {
+            @Override
+            public AcquireResult tryAcquire(long nowNanos, long permits) {
+                return SharedMemoryRateLimiter.this.tryAcquire(slot, nowNanos, permits);
+            }
+
+            @Override
+            public long availableTokens(long nowNanos) {
+                return SharedMemoryRateLimiter.this.availableTokens(slot, nowNanos);
+            }
+
+            @Override
+            public long retryAfterNanos(long nowNanos, long permits) {
+                return SharedMemoryRateLimiter.this.retryAfterNanos(slot, nowNanos, permits);
+            }
+
+            // the no-time overloads and acquire all read this, so every process shares the clock origin
+            @Override
+            public long nowNanos() {
+                return epochNanos();
+            }
+        };
+    }
+
+    /** Unmaps the file; the state stays in it for the other processes. */
+    @Override
+    public void close() throws IOException {
+        arena.close();
+        channel.close();
+    }
+
+    private AcquireResult tryAcquire(int slot, long nowNanos, long permits) {
+        validatePermits(permits);
+        long offset = offsetOf(slot);
+        while (true) {
+            long state = (long) LONG.getVolatile(segment, offset);
+            long next = algorithm == Algorithm.GCRA
+                    ? gcraAcquire(state, nowNanos, permits)
+                    : fixedWindowAcquire(state, nowNanos, permits);
+            if (next == state) {
+                return new AcquireResult.Rejected(retryAfterNanosInternal(state, nowNanos, permits));
+            }
+            if (LONG.compareAndSet(segment, offset, state, next)) {
+                return new AcquireResult.Acquired(permits);
+            }
+        }
+    }
+
+    private long availableTokens(int slot, long nowNanos) {
+        long state = (long) LONG.getVolatile(segment, offsetOf(slot));
+        if (algorithm == Algorithm.GCRA) {
+            long slackNanos = Utils.saturatedAdd(nowNanos, Utils.saturatedMultiply(limit, periodNanos)) - state;
+            return slackNanos <= 0 ? 0 : Math.min(limit, slackNanos / periodNanos);
+        }
+        return limit - usedInWindow(state, nowNanos);
+    }
+
+    private long retryAfterNanos(int slot, long nowNanos, long permits) {
+        validatePermits(permits);
+        return retryAfterNanosInternal((long) LONG.getVolatile(segment, offsetOf(slot)), nowNanos, permits);
+    }
+
+    /** The new state after granting {@code permits}, or {@code state} itself if they do not fit. */
+    private long gcraAcquire(long theoreticalArrivalNanos, long nowNanos, long permits) {
+        long startNanos = Math.max(nowNanos, theoreticalArrivalNanos);
+        long nextNanos = Utils.saturatedAdd(startNanos, Utils.saturatedMultiply(permits, periodNanos));
+        long burstLimitNanos = Utils.saturatedAdd(nowNanos, Utils.saturatedMultiply(limit, periodNanos));
+        return nextNanos > burstLimitNanos ? theoreticalArrivalNanos : nextNanos;
+    }
+
+    private long fixedWindowAcquire(long state, long nowNanos, long permits) {
+        long used = usedInWindow(state, nowNanos);
+        if (used + permits > limit) {
+            return state;
+        }
+        int window = (int) Math.floorDiv(nowNanos, periodNanos);
+        if (windowsAhead(state, window) > 0) {
+            window = (int) (state >>> 32); // a stale nowNanos counts against the newer window
+        }
+        return ((long) window << 32) | (used + permits);
+    }
+
+    /** Permits used in the window of {@code nowNanos}. */
+    private long usedInWindow(long state, long nowNanos) {
+        int window = (int) Math.floorDiv(nowNanos, periodNanos);
+        return windowsAhead(state, window) >= 0 ? state & 0xFFFF_FFFFL : 0;
+    }
+
+    /**
+     * How many windows the slot's tag is ahead of {@code window}, in 32-bit serial-number arithmetic; negative for a
+     * stale slot. A tag further ahead than {@link #MAX_WINDOWS_AHEAD} is an idle slot whose tag wrapped around.
+     */
+    private static int windowsAhead(long state, int window) {
+        int ahead = (int) (state >>> 32) - window;
+        return ahead > MAX_WINDOWS_AHEAD ? -1 : ahead;
+    }
+
+    private long retryAfterNanosInternal(long state, long nowNanos, long permits) {
+        if (algorithm == Algorithm.GCRA) {
+            long burstSlackNanos = Utils.saturatedMultiply(limit - permits, periodNanos);
+            return Math.max(0, state - burstSlackNanos - nowNanos);
+        }
+        if (usedInWindow(state, nowNanos) + permits <= limit) {
+            return 0;
+        }
+        long windowStartNanos = nowNanos - Math.floorMod(nowNanos, periodNanos);
+        return Utils.saturatedAdd(windowStartNanos, periodNanos) - nowNanos;
+    }
+
+    private int slotOf(String key) {
+        int hash = key.hashCode();
+        hash = (hash ^ (hash >>> 16)) * 0x9E3779B9;
+        return Math.floorMod(hash, slots);
+    }
+
+    private static long offsetOf(int slot) {
+        return HEADER_SIZE + (long) SLOT_SIZE * slot;
+    }
+
+    private void writeHeader(long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(HEADER_SIZE)
+                .putInt(SLOT_SIZE)
+                .putInt(algorithm.ordinal())
+                .putInt(slots)
+                .putLong(limit)
+                .putLong(periodNanos);
+        channel.write(header.clear(), 0);
+        channel.write(ByteBuffer.allocate(1), size - 1); // zero-filled slots up to the full size
+        channel.force(true);
+    }
+
+    private void verifyHeader(long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("Not a shared rate limiter file");
+        }
+        if (header.getInt() != VERSION || header.getInt() != HEADER_SIZE || header.getInt() != SLOT_SIZE) {
+            throw new IOException("Unsupported shared rate limiter file layout");
+        }
+        if (header.getInt() != algorithm.ordinal()
+                || header.getInt() != slots
+                || header.getLong() != limit
+                || header.getLong() != periodNanos
+                || channel.size() < size) {
+            throw new IllegalArgumentException("File was created with a different algorithm, limit, period or slots");
+        }
+    }
+
+    private static long epochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    private void validatePermits(long permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Permits must be positive");
+        }
+        if (permits > limit) {
+            throw new IllegalArgumentException("Permits exceed limit");
+        }
+    }
+
+    private static void validateInitialParameters(Algorithm algorithm, long limit, long periodNanos, int slots) {
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Algorithm is required");
+        }
+        if (limit <= 0 || periodNanos <= 0 || slots <= 0) {
+            throw new IllegalArgumentException("Limit, period, slots must be positive");
+        }
+        if (algorithm == Algorithm.FIXED_WINDOW && limit > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Fixed window limit must fit in 31 bits");
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package io.github.vkunitsyn.ratelimiter.trace;
+
+import io.github.vkunitsyn.ratelimiter.FixedWindowCounter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.SlidingWindowLog;
+import io.github.vkunitsyn.ratelimiter.SpacingLeakyBucket;
+import io.github.vkunitsyn.ratelimiter.TokenBucket;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates many limiter configurations against one {@link Workload} in parallel and picks the Pareto-optimal ones.
+ *
+ * <p>Every candidate is scored on the admitted throughput (higher is better), the burst peak, i.e. the most permits
+ * admitted within any {@code peakWindowNanos} (lower is better, it is what the protected backend has to absorb),
+ * and the rejection rate (lower is better). Candidates are spread over a fork-join pool, one task per candidate,
+ * each replaying the whole workload with fresh limiters (one per workload key); the workload itself is shared
+ * read-only.
+ */
+public final class ParameterSweep {
+    private ParameterSweep() {}
+
+    /** A named limiter configuration; {@code factory} must return a new limiter on every call. */
+    public record Candidate(String description, Supplier<? extends RateLimiter> factory) {
+        public Candidate {
+            Objects.requireNonNull(description, "description");
+            Objects.requireNonNull(factory, "factory");
+        }
+    }
+
+    /**
+     * @param admittedPerSecond permits admitted per second of workload time
+     * @param burstPeak most permits admitted within any peak window
+     * @param rejectionRate share of requests rejected
+     */
+    public record Score(Candidate candidate, double admittedPerSecond, long burstPeak, double rejectionRate) {
+        /** At least as good as {@code other} on every objective and better on one. */
+        public boolean dominates(Score other) {
+            boolean noWorse = admittedPerSecond >= other.admittedPerSecond
+                    && burstPeak <= other.burstPeak
+                    && rejectionRate <= other.rejectionRate;
+            boolean better = admittedPerSecond > other.admittedPerSecond
+                    || burstPeak < other.burstPeak
+                    || rejectionRate < other.rejectionRate;
+            return noWorse && better;
+        }
+    }
+
+    /** Scores every candidate on the common fork-join pool, in the order of {@code candidates}. */
+    public static List<Score> evaluate(Workload workload, List<Candidate> candidates, long peakWindowNanos) {
+        return evaluate(workload, candidates, peakWindowNanos, ForkJoinPool.commonPool());
+    }
+
+    public static List<Score> evaluate(
+            Workload workload, List<Candidate> candidates, long peakWindowNanos, ForkJoinPool pool) {
+        if (peakWindowNanos <= 0) {
+            throw new IllegalArgumentException("Peak window must be positive");
+        }
+        Candidate[] all = candidates.toArray(Candidate[]::new);
+        Score[] scores = new Score[all.length];
+        pool.invoke(new SweepTask(workload, all, scores, peakWindowNanos, 0, all.length));
+        return List.of(scores);
+    }
+
+    /** The scores no other score dominates, by descending admitted throughput. */
+    public static List<Score> paretoFront(List<Score> scores) {
+        List<Score> front = new ArrayList<>();
+        for (Score candidate : scores) {
+            boolean dominated = false;
+            for (Score other : scores) {
+                if (other.dominates(candidate)) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated) {
+                front.add(candidate);
+            }
+        }
+        front.sort(Comparator.comparingDouble(Score::admittedPerSecond).reversed());
+        return front;
+    }
+
+    /** Every valid combination, i.e. with {@code refillTokens <= capacity}. */
+    public static List<Candidate> tokenBuckets(long[] capacities, long[] refillTokens, long[] refillPeriodsNanos) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (long capacity : capacities) {
+            for (long refill : refillTokens) {
+                for (long period : refillPeriodsNanos) {
+                    if (refill <= capacity) {
+                        candidates.add(new Candidate(
+                                "token(capacity=" + capacity + ", refill=" + refill + ", periodNanos=" + period + ")",
+                                () -> new TokenBucket(capacity, refill, period)));
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    public static List<Candidate> spacingBuckets(long[] maxBursts, long[] rateIntervalsNanos) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (long burst : maxBursts) {
+            for (long interval : rateIntervalsNanos) {
+                candidates.add(new Candidate(
+                        "spacing(burst=" + burst + ", intervalNanos=" + interval + ")",
+                        () -> new SpacingLeakyBucket(burst, interval)));
+            }
+        }
+        return candidates;
+    }
+
+    public static List<Candidate> fixedWindows(long[] rates, long[] windowSizesNanos) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (long rate : rates) {
+            for (long window : windowSizesNanos) {
+                candidates.add(new Candidate(
+                        "fixed(rate=" + rate + ", windowNanos=" + window + ")",
+                        () -> new FixedWindowCounter(rate, window)));
+            }
+        }
+        return candidates;
+    }
+
+    public static List<Candidate> slidingWindows(long[] rates, long[] windowSizesNanos) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (long rate : rates) {
+            for (long window : windowSizesNanos) {
+                candidates.add(new Candidate(
+                        "sliding(rate=" + rate + ", windowNanos=" + window + ")",
+                        () -> new SlidingWindowLog(rate, window)));
+            }
+        }
+        return candidates;
+    }
+
+    static Score score(Workload workload, Candidate candidate, long peakWindowNanos) {
+        RateLimiter[] limiters = new RateLimiter[workload.keyCount()];
+        long[] admitted = new long[(workload.size() + 63) >>> 6];
+        long admittedPermits = 0;
+        long rejected = 0;
+        long windowPermits = 0;
+        long burstPeak = 0;
+        int windowTail = 0;
+
+        for (int i = 0; i < workload.size(); i++) {
+            int key = workload.key(i);
+            RateLimiter limiter = limiters[key];
+            if (limiter == null) {
+                limiter = limiters[key] = candidate.factory().get();
+            }
+            long nowNanos = workload.nowNanos(i);
+            long permits = workload.permits(i);
+            boolean acquired;
+            try {
+                acquired = limiter.tryAcquire(nowNanos, permits).isAcquired();
+            } catch (IllegalArgumentException e) {
+                acquired = false; // more permits than the configuration can ever grant at once
+            }
+            if (!acquired) {
+                rejected++;
+                continue;
+            }
+
+            admitted[i >>> 6] |= 1L << i;
+            admittedPermits += permits;
+            windowPermits += permits;
+            // slide the window's tail past requests older than the window ending now
+            while (workload.nowNanos(windowTail) <= nowNanos - peakWindowNanos) {
+                if ((admitted[windowTail >>> 6] & 1L << windowTail) != 0) {
+                    windowPermits -= workload.permits(windowTail);
+                }
+                windowTail++;
+            }
+            burstPeak = Math.max(burstPeak, windowPermits);
+        }
+
+        double seconds = Math.max(1, workload.durationNanos()) / 1e9;
+        double rejectionRate = workload.size() == 0 ? 0 : (double) rejected / workload.size();
+        return new Score(candidate, admittedPermits / seconds, burstPeak, rejectionRate);
+    }
+
+    private static final class SweepTask extends RecursiveAction {
+        private final Workload workload;
+        private final Candidate[] candidates;
+        private final Score[] scores;
+        private final long peakWindowNanos;
+        private final int from;
+        private final int to;
+
+        SweepTask(Workload workload, Candidate[] candidates, Score[] scores, long peakWindowNanos, int from, int to) {
+            this.workload = workload;
+            this.candidates = candidates;
+            this.scores = scores;
+            this.peakWindowNanos = peakWindowNanos;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (to > from) {
+                    scores[from] = score(workload, candidates[from], peakWindowNanos);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                    new SweepTask(workload, candidates, scores, peakWindowNanos, from, middle),
+                    new SweepTask(workload, candidates, scores, peakWindowNanos, middle, to));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.vkunitsyn.ratelimiter.trace;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Layout of a decision trace: a header of {@link #MAGIC} and {@link #VERSION} (two big-endian ints), then one
+ * record per decision, each a sequence of unsigned LEB128 varints:
+ *
+ * <ol>
+ *   <li>{@code nowNanos} minus the previous record's (0 before the first), zigzag-encoded since recording threads
+ *       may interleave slightly out of order
+ *   <li>key id
+ *   <li>{@code permits << 1 | acquired}
+ * </ol>
+ *
+ * <p>A steady stream of single-permit decisions a few microseconds apart costs 4 to 5 bytes per record.
+ */
+final class TraceFormat {
+    static final int MAGIC = 0x52_4C_54_52; // "RLTR"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    /** Upper bound of one encoded record. */
+    static final int MAX_RECORD_SIZE = 3 * 10;
+
+    private static final ValueLayout.OfInt BIG_ENDIAN_INT =
+            ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private TraceFormat() {}
+
+    static void writeRecord(ByteBuffer out, long deltaNanos, int keyId, long permits, boolean acquired) {
+        writeVarLong(out, (deltaNanos << 1) ^ (deltaNanos >> 63));
+        writeVarLong(out, Integer.toUnsignedLong(keyId));
+        writeVarLong(out, permits << 1 | (acquired ? 1 : 0));
+    }
+
+    static void writeVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long decodeZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Maps a whole trace file read-only into {@code arena} and checks its header. */
+    static MemorySegment map(FileChannel channel, Arena arena) throws IOException {
+        MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        if (segment.byteSize() < HEADER_SIZE
+                || segment.get(BIG_ENDIAN_INT, 0) != MAGIC
+                || segment.get(BIG_ENDIAN_INT, 4) != VERSION) {
+            throw new IOException("Not a rate limiter trace");
+        }
+        return segment;
+    }
+
+    /** Reads the varints of the records of a mapped trace, one after another. */
+    static final class Decoder {
+        private final MemorySegment segment;
+        private final long size;
+        private long position = HEADER_SIZE;
+
+        Decoder(MemorySegment segment) {
+            this.segment = segment;
+            this.size = segment.byteSize();
+        }
+
+        boolean hasRemaining() {
+            return position < size;
+        }
+
+        long next() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= size) {
+                    throw new IOException("Truncated trace record at " + position);
+                }
+                byte b = segment.get(ValueLayout.JAVA_BYTE, position++);
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint at " + position);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package io.github.vkunitsyn.ratelimiter.trace;
+
+import io.github.vkunitsyn.ratelimiter.KeyedRateLimiter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToIntFunction;
+
+/**
+ * Records every {@code tryAcquire} decision of the wrapped limiters into a trace file, see {@link TraceFormat}.
+ *
+ * <p>Recording threads only claim a slot in a bounded multi-producer ring buffer and copy three numbers into it;
+ * a single writer thread encodes and writes the records in claim order. When the writer falls behind and the
+ * ring is full, records are dropped and counted instead of slowing the limiter down.
+ */
+public final class TraceRecorder implements AutoCloseable {
+    private static final long IDLE_PARK_NANOS = 100_000;
+
+    private final FileChannel channel;
+    private final int mask;
+    private final long[] nowNanos;
+    private final int[] keyIds;
+    private final long[] permitsAndDecision;
+    // slot i holds sequence s once published, as s + 1
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long written;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    /** @param bufferRecords ring buffer size, rounded up to a power of two */
+    public TraceRecorder(Path file, int bufferRecords) throws IOException {
+        if (bufferRecords <= 0 || bufferRecords > 1 << 30) {
+            throw new IllegalArgumentException("Buffer records must be positive and at most 2^30");
+        }
+        int capacity = Integer.highestOneBit(bufferRecords * 2 - 1);
+        this.mask = capacity - 1;
+        this.nowNanos = new long[capacity];
+        this.keyIds = new int[capacity];
+        this.permitsAndDecision = new long[capacity];
+        this.published = new AtomicLongArray(capacity);
+
+        this.channel = FileChannel.open(
+                file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(TraceFormat.HEADER_SIZE)
+                .putInt(TraceFormat.MAGIC)
+                .putInt(TraceFormat.VERSION)
+                .flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        this.writer = Thread.ofPlatform().daemon().name("trace-writer").start(this::writeLoop);
+    }
+
+    /** Records the decisions of {@code limiter} with key id 0. */
+    public RateLimiter wrap(RateLimiter limiter) {
+        Objects.requireNonNull(limiter, "limiter");
+        return new RateLimiter() {
+            @Override
+            public AcquireResult tryAcquire(long nowNanos, long permits) {
+                AcquireResult result = limiter.tryAcquire(nowNanos, permits);
+                record(nowNanos, 0, permits, result.isAcquired());
+                return result;
+            }
+
+            @Override
+            public AcquireResult tryAcquireUpTo(long nowNanos, long maxPermits, long minPermits) {
+                AcquireResult result = limiter.tryAcquireUpTo(nowNanos, maxPermits, minPermits);
+                // a grant is traced with the permits it got, a rejection with the least that was asked for
+                long permits = result instanceof AcquireResult.Acquired(long granted) ? granted : minPermits;
+                record(nowNanos, 0, permits, result.isAcquired());
+                return result;
+            }
+
+            @Override
+            public long availableTokens(long nowNanos) {
+                return limiter.availableTokens(nowNanos);
+            }
+
+            @Override
+            public long retryAfterNanos(long nowNanos, long permits) {
+                return limiter.retryAfterNanos(nowNanos, permits);
+            }
+
+            @Override
+            public long nowNanos() {
+                return limiter.nowNanos();
+            }
+        };
+    }
+
+    /** Records the decisions of {@code limiter} with the key id {@code keyIds} assigns to each key. */
+    public <K> KeyedRateLimiter<K> wrap(KeyedRateLimiter<K> limiter, ToIntFunction<? super K> keyIds) {
+        Objects.requireNonNull(limiter, "limiter");
+        Objects.requireNonNull(keyIds, "keyIds");
+        return new KeyedRateLimiter<>() {
+            @Override
+            public AcquireResult tryAcquire(K key, long nowNanos, long permits) {
+                AcquireResult result = limiter.tryAcquire(key, nowNanos, permits);
+                record(nowNanos, keyIds.applyAsInt(key), permits, result.isAcquired());
+                return result;
+            }
+
+            @Override
+            public long availableTokens(K key, long nowNanos) {
+                return limiter.availableTokens(key, nowNanos);
+            }
+
+            @Override
+            public long retryAfterNanos(K key, long nowNanos, long permits) {
+                return limiter.retryAfterNanos(key, nowNanos, permits);
+            }
+        };
+    }
+
+    /** Records that were lost because the ring buffer was full. */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /** Writes out everything recorded so far and closes the file. */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void record(long nowNanos, int keyId, long permits, boolean acquired) {
+        if (closed) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - written > mask) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        this.nowNanos[slot] = nowNanos;
+        this.keyIds[slot] = keyId;
+        this.permitsAndDecision[slot] = permits << 1 | (acquired ? 1 : 0);
+        published.lazySet(slot, sequence + 1);
+    }
+
+    private void writeLoop() {
+        ByteBuffer out = ByteBuffer.allocateDirect(1 << 16);
+        long previousNanos = 0;
+        long next = 0;
+        try {
+            while (true) {
+                int slot = (int) next & mask;
+                if (published.get(slot) == next + 1) {
+                    long permits = permitsAndDecision[slot] >>> 1;
+                    boolean acquired = (permitsAndDecision[slot] & 1) != 0;
+                    long now = nowNanos[slot];
+                    TraceFormat.writeRecord(out, now - previousNanos, keyIds[slot], permits, acquired);
+                    previousNanos = now;
+                    written = ++next;
+                    if (out.remaining() < TraceFormat.MAX_RECORD_SIZE) {
+                        flush(out);
+                    }
+                } else if (closed && next == claimed.get()) {
+                    flush(out);
+                    return;
+                } else if (next != claimed.get()) {
+                    Thread.onSpinWait(); // claimed, about to be published
+                } else {
+                    flush(out);
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            closed = true;
+        }
+    }
+
+    private void flush(ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.vkunitsyn.ratelimiter.trace;
+
+import io.github.vkunitsyn.ratelimiter.KeyedRateLimiter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replays a trace written by {@link TraceRecorder} against another limiter configuration as fast as it can
+ * decode: the file is memory-mapped and every record becomes one {@code tryAcquire} with the recorded
+ * {@code nowNanos}, key and permits. Decisions that differ from the recorded ones are counted.
+ */
+public final class TraceReplay {
+    private TraceReplay() {}
+
+    /** Replays every record against {@code limiter}, whatever its key id. */
+    public static Report replay(Path trace, RateLimiter limiter) throws IOException {
+        return replay(trace, new KeyedRateLimiter<Integer>() {
+            @Override
+            public RateLimiter.AcquireResult tryAcquire(Integer key, long nowNanos, long permits) {
+                return limiter.tryAcquire(nowNanos, permits);
+            }
+
+            @Override
+            public long availableTokens(Integer key, long nowNanos) {
+                return limiter.availableTokens(nowNanos);
+            }
+
+            @Override
+            public long retryAfterNanos(Integer key, long nowNanos, long permits) {
+                return limiter.retryAfterNanos(nowNanos, permits);
+            }
+        });
+    }
+
+    /** Replays every record against {@code limiter}, keyed by the recorded key id. */
+    public static Report replay(Path trace, KeyedRateLimiter<Integer> limiter) throws IOException {
+        try (FileChannel channel = FileChannel.open(trace, StandardOpenOption.READ);
+                Arena arena = Arena.ofConfined()) {
+            TraceFormat.Decoder decoder = new TraceFormat.Decoder(TraceFormat.map(channel, arena));
+            long records = 0;
+            long grantedNowRejected = 0;
+            long rejectedNowGranted = 0;
+            long nowNanos = 0;
+            long startNanos = System.nanoTime();
+            while (decoder.hasRemaining()) {
+                nowNanos += TraceFormat.decodeZigZag(decoder.next());
+                int keyId = (int) decoder.next();
+                long permitsAndDecision = decoder.next();
+                boolean recorded = (permitsAndDecision & 1) != 0;
+
+                boolean replayed = limiter.tryAcquire(keyId, nowNanos, permitsAndDecision >>> 1).isAcquired();
+                if (recorded && !replayed) {
+                    grantedNowRejected++;
+                } else if (!recorded && replayed) {
+                    rejectedNowGranted++;
+                }
+                records++;
+            }
+            return new Report(records, grantedNowRejected, rejectedNowGranted, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * @param grantedNowRejected records granted in the trace that the replayed limiter rejected
+     * @param rejectedNowGranted records rejected in the trace that the replayed limiter granted
+     * @param elapsedNanos decoding and replaying, excluding opening and mapping the file
+     */
+    public record Report(long records, long grantedNowRejected, long rejectedNowGranted, long elapsedNanos) {
+        public long divergences() {
+            return grantedNowRejected + rejectedNowGranted;
+        }
+
+        public double recordsPerSecond() {
+            return elapsedNanos == 0 ? 0 : records * 1e9 / elapsedNanos;
+        }
+    }
+}
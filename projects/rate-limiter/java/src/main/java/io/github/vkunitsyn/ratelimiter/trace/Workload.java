@@ -0,0 +1,124 @@
+package io.github.vkunitsyn.ratelimiter.trace;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * A sequence of acquisition requests (time, key, permits) to evaluate limiter configurations against, either read
+ * from a recorded trace or generated. Keys are renumbered densely from 0; the recorded decisions are dropped.
+ */
+public final class Workload {
+    private final long[] nowNanos;
+    private final int[] keys;
+    private final long[] permits;
+    private final int keyCount;
+
+    private Workload(long[] nowNanos, int[] keys, long[] permits, int keyCount) {
+        this.nowNanos = nowNanos;
+        this.keys = keys;
+        this.permits = permits;
+        this.keyCount = keyCount;
+    }
+
+    /** Requests on a single key. */
+    public static Workload of(long[] nowNanos, long[] permits) {
+        if (nowNanos.length != permits.length) {
+            throw new IllegalArgumentException("Times and permits must have the same length");
+        }
+        for (long p : permits) {
+            if (p <= 0) {
+                throw new IllegalArgumentException("Permits must be positive");
+            }
+        }
+        return new Workload(nowNanos.clone(), new int[nowNanos.length], permits.clone(), 1);
+    }
+
+    /** The requests of a trace written by {@link TraceRecorder}, in recorded order. */
+    public static Workload fromTrace(Path trace) throws IOException {
+        try (FileChannel channel = FileChannel.open(trace, StandardOpenOption.READ);
+                Arena arena = Arena.ofConfined()) {
+            TraceFormat.Decoder decoder = new TraceFormat.Decoder(TraceFormat.map(channel, arena));
+            long[] nowNanos = new long[1024];
+            int[] keys = new int[1024];
+            long[] permits = new long[1024];
+            Map<Integer, Integer> denseKeys = new HashMap<>();
+            int size = 0;
+            long now = 0;
+            while (decoder.hasRemaining()) {
+                if (size == nowNanos.length) {
+                    nowNanos = Arrays.copyOf(nowNanos, size * 2);
+                    keys = Arrays.copyOf(keys, size * 2);
+                    permits = Arrays.copyOf(permits, size * 2);
+                }
+                now += TraceFormat.decodeZigZag(decoder.next());
+                int keyId = (int) decoder.next();
+                nowNanos[size] = now;
+                keys[size] = denseKeys.computeIfAbsent(keyId, k -> denseKeys.size());
+                permits[size] = decoder.next() >>> 1;
+                size++;
+            }
+            return new Workload(
+                    Arrays.copyOf(nowNanos, size),
+                    Arrays.copyOf(keys, size),
+                    Arrays.copyOf(permits, size),
+                    Math.max(1, denseKeys.size()));
+        }
+    }
+
+    /**
+     * Single-permit requests on one key arriving as a Poisson process of {@code perSecond}, except for bursts of
+     * about 100 requests at {@code burstFactor} times that rate, which make up about 9% of all requests.
+     */
+    public static Workload synthetic(int events, double perSecond, double burstFactor, long seed) {
+        if (events < 0 || !(perSecond > 0) || !(burstFactor >= 1)) {
+            throw new IllegalArgumentException("Events cannot be negative, rate must be positive, burst factor >= 1");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] nowNanos = new long[events];
+        long[] permits = new long[events];
+        double meanGapNanos = 1e9 / perSecond;
+        boolean bursting = false;
+        double now = 0;
+        for (int i = 0; i < events; i++) {
+            // enter a burst with p = 0.001, leave it with p = 0.01 per request
+            bursting = bursting ? random.nextDouble() >= 0.01 : random.nextDouble() < 0.001;
+            double gapNanos = -Math.log(1 - random.nextDouble()) * meanGapNanos;
+            now += bursting ? gapNanos / burstFactor : gapNanos;
+            nowNanos[i] = (long) now;
+            permits[i] = 1;
+        }
+        return new Workload(nowNanos, new int[events], permits, 1);
+    }
+
+    public int size() {
+        return nowNanos.length;
+    }
+
+    public int keyCount() {
+        return keyCount;
+    }
+
+    /** Time from the first to the last request. */
+    public long durationNanos() {
+        return nowNanos.length == 0 ? 0 : nowNanos[nowNanos.length - 1] - nowNanos[0];
+    }
+
+    long nowNanos(int i) {
+        return nowNanos[i];
+    }
+
+    int key(int i) {
+        return keys[i];
+    }
+
+    long permits(int i) {
+        return permits[i];
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.vkunitsyn.gateway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.vkunitsyn.ratelimiter.PerKeyRateLimiter;
+import io.github.vkunitsyn.ratelimiter.TokenBucket;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RateLimitingGatewayTest {
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    private HttpServer upstream;
+    private RateLimitingGateway gateway;
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        upstream = HttpServer.create(new InetSocketAddress(LOOPBACK, 0), 0);
+        upstream.createContext("/", exchange -> {
+            String echo = exchange.getRequestMethod() + " " + exchange.getRequestURI();
+            byte[] body = echo.getBytes(StandardCharsets.UTF_8);
+            try (exchange; OutputStream out = exchange.getResponseBody()) {
+                exchange.getResponseHeaders().set("X-Upstream", "yes");
+                exchange.sendResponseHeaders(200, body.length);
+                out.write(body);
+            }
+        });
+        upstream.createContext("/upload", exchange -> {
+            long received;
+            try (var in = exchange.getRequestBody()) {
+                received = in.transferTo(OutputStream.nullOutputStream());
+            }
+            String echo =
+                    received + " bytes, Content-Length " + exchange.getRequestHeaders().getFirst("Content-Length");
+            byte[] body = echo.getBytes(StandardCharsets.UTF_8);
+            try (exchange; OutputStream out = exchange.getResponseBody()) {
+                exchange.sendResponseHeaders(200, body.length);
+                out.write(body);
+            }
+        });
+        upstream.start();
+
+        URI upstreamUri = URI.create("http://" + LOOPBACK.getHostAddress() + ":" + upstream.getAddress().getPort());
+        var limiter = new PerKeyRateLimiter<String>(() -> new TokenBucket(2, 1, Duration.ofSeconds(30).toNanos()));
+        gateway = new RateLimitingGateway(
+                new InetSocketAddress(LOOPBACK, 0), upstreamUri, limiter, RateLimitingGateway.byHeader("X-Api-Key"));
+        gateway.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        gateway.close();
+        upstream.stop(0);
+    }
+
+    @Test
+    void proxiesAllowedRequestsToUpstream() throws Exception {
+        HttpResponse<String> response = send("/items?id=7", "alice");
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).isEqualTo("GET /items?id=7");
+        assertThat(response.headers().firstValue("X-Upstream")).contains("yes");
+    }
+
+    @Test
+    void rejectsWith429AndRetryAfterOncePerKeyLimitIsExhausted() throws Exception {
+        assertThat(send("/", "alice").statusCode()).isEqualTo(200);
+        assertThat(send("/", "alice").statusCode()).isEqualTo(200);
+
+        HttpResponse<String> rejected = send("/", "alice");
+        assertThat(rejected.statusCode()).isEqualTo(429);
+        // 30s refill period, so the next permit is at most 30 seconds away
+        assertThat(rejected.headers().firstValueAsLong("Retry-After").orElseThrow()).isBetween(1L, 30L);
+
+        assertThat(send("/", "bob").statusCode()).isEqualTo(200);
+    }
+
+    @Test
+    void overlongHeaderKeysFallBackToTheClientAddress() throws Exception {
+        String longKey = "k".repeat(RateLimitingGateway.MAX_KEY_LENGTH + 1);
+        assertThat(send("/", longKey + "1").statusCode()).isEqualTo(200);
+        assertThat(send("/", longKey + "2").statusCode()).isEqualTo(200);
+        // a fresh key each time, but all of them are keyed by the one loopback address
+        assertThat(send("/", longKey + "3").statusCode()).isEqualTo(429);
+    }
+
+    @Test
+    void streamsRequestBodiesToUpstreamWithTheirLength() throws Exception {
+        URI uri = URI.create("http://" + LOOPBACK.getHostAddress() + ":" + gateway.port() + "/upload");
+        int size = 8 * 1024 * 1024;
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("X-Api-Key", "alice")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(new byte[size]))
+                .build();
+
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).isEqualTo(size + " bytes, Content-Length " + size);
+    }
+
+    private HttpResponse<String> send(String pathAndQuery, String apiKey) throws Exception {
+        URI uri = URI.create("http://" + LOOPBACK.getHostAddress() + ":" + gateway.port() + pathAndQuery);
+        HttpRequest request = HttpRequest.newBuilder(uri).header("X-Api-Key", apiKey).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
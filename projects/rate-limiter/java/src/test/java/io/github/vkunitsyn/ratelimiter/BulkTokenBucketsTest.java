@@ -0,0 +1,89 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class BulkTokenBucketsTest {
+    private static final long PERIOD = Duration.ofMillis(100).toNanos();
+
+    @Test
+    void behavesLikeTokenBucketOnTheRefillGrid() {
+        var buckets = new BulkTokenBuckets(new long[] {10}, new long[] {1}, PERIOD);
+        long[] permits = {10};
+        long[] retryAfter = new long[1];
+
+        long t0 = 10 * PERIOD;
+        assertThat(buckets.tryAcquire(t0, permits, retryAfter)).isEqualTo(1);
+        assertThat(retryAfter[0]).isZero();
+        assertThat(buckets.availableTokens(0, t0)).isZero();
+
+        permits[0] = 3;
+        assertThat(buckets.tryAcquire(t0 + PERIOD / 2, permits, retryAfter)).isZero();
+        assertThat(retryAfter[0]).isEqualTo(3 * PERIOD - PERIOD / 2);
+
+        assertThat(buckets.availableTokens(0, t0 + 3 * PERIOD)).isEqualTo(3);
+        assertThat(buckets.tryAcquire(t0 + 3 * PERIOD, permits, retryAfter)).isEqualTo(1);
+        assertThat(buckets.availableTokens(0, t0 + 1_000 * PERIOD)).isEqualTo(10);
+    }
+
+    @Test
+    void zeroPermitsOnlyRefills() {
+        var buckets = new BulkTokenBuckets(new long[] {5, 5}, new long[] {1, 1}, PERIOD);
+        long[] retryAfter = new long[2];
+
+        assertThat(buckets.tryAcquire(0, new long[] {5, 0}, retryAfter)).isEqualTo(1);
+        assertThat(retryAfter).containsExactly(0L, 0L);
+        assertThat(buckets.availableTokens(0, 0)).isZero();
+        assertThat(buckets.availableTokens(1, 0)).isEqualTo(5);
+    }
+
+    @Test
+    void vectorAndScalarPathsMakeIdenticalDecisions() {
+        Random random = new Random(42);
+        int size = 1_003; // not a multiple of any vector length, so the scalar tail is exercised too
+        long[] capacity = new long[size];
+        long[] refill = new long[size];
+        for (int i = 0; i < size; i++) {
+            capacity[i] = 1 + random.nextInt(50);
+            refill[i] = 1 + random.nextInt((int) capacity[i]);
+        }
+        var vector = new BulkTokenBuckets(capacity, refill, PERIOD, true);
+        var scalar = new BulkTokenBuckets(capacity, refill, PERIOD, false);
+        assertThat(scalar.isVectorized()).isFalse();
+
+        long now = 123_456_789L;
+        long[] permits = new long[size];
+        long[] vectorRetry = new long[size];
+        long[] scalarRetry = new long[size];
+        for (int round = 0; round < 200; round++) {
+            now += random.nextInt((int) (3 * PERIOD));
+            for (int i = 0; i < size; i++) {
+                permits[i] = random.nextInt((int) capacity[i] + 1);
+            }
+            assertThat(vector.tryAcquire(now, permits, vectorRetry))
+                    .isEqualTo(scalar.tryAcquire(now, permits, scalarRetry));
+            assertThat(vectorRetry).isEqualTo(scalarRetry);
+            for (int i = 0; i < size; i++) {
+                assertThat(vector.availableTokens(i, now)).isEqualTo(scalar.availableTokens(i, now));
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvalidPermits() {
+        var buckets = new BulkTokenBuckets(new long[] {10}, new long[] {1}, PERIOD);
+
+        assertThatThrownBy(() -> buckets.tryAcquire(0, new long[] {-1}, new long[1]))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThatThrownBy(() -> buckets.tryAcquire(0, new long[] {11}, new long[1]))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThatThrownBy(() -> buckets.tryAcquire(0, new long[] {1, 1}, new long[2]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
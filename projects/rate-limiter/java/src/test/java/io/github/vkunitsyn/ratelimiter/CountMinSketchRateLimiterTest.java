@@ -0,0 +1,98 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class CountMinSketchRateLimiterTest {
+    private static final long WINDOW = Duration.ofSeconds(1).toNanos();
+
+    @Test
+    void stringsWithTheSameHashCodeDoNotShareCounters() {
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+        var limiter = new CountMinSketchRateLimiter<String>(3, WINDOW, 1_024, 8);
+
+        assertThat(limiter.tryAcquire("Aa", 0, 3).isAcquired()).isTrue();
+        assertThat(limiter.availableTokens("Aa", 0)).isZero();
+        assertThat(limiter.availableTokens("BB", 0)).isEqualTo(3);
+    }
+
+    @Test
+    void neverGrantsMoreThanRatePerKeyAndWindow() {
+        var limiter = new CountMinSketchRateLimiter<String>(5, WINDOW, 64, 4);
+        long t0 = 3 * WINDOW + 1_000;
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire("10.0.0.1", t0, 1).isAcquired()).isTrue();
+        }
+        var rejected = limiter.tryAcquire("10.0.0.1", t0, 1);
+        assertThat(rejected.isAcquired()).isFalse();
+        assertThat(rejected.retryAfterNanos()).isEqualTo(WINDOW - 1_000);
+        assertThat(limiter.availableTokens("10.0.0.1", t0)).isZero();
+
+        long nextWindow = 4 * WINDOW;
+        assertThat(limiter.retryAfterNanos("10.0.0.1", nextWindow, 5)).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.1", nextWindow, 5).isAcquired()).isTrue();
+    }
+
+    @Test
+    void readsOfALaterWindowDoNotResetTheCurrentOne() {
+        var limiter = new CountMinSketchRateLimiter<String>(2, WINDOW, 64, 4);
+        assertThat(limiter.tryAcquire("a", 0, 2).isAcquired()).isTrue();
+
+        assertThat(limiter.availableTokens("a", WINDOW)).isEqualTo(2);
+        assertThat(limiter.retryAfterNanos("a", WINDOW, 2)).isZero();
+
+        // a late acquisition still sees the window it belongs to
+        var late = limiter.tryAcquire("a", WINDOW - 1, 1);
+        assertThat(late.isAcquired()).isFalse();
+        assertThat(late.retryAfterNanos()).isEqualTo(1);
+        assertThat(limiter.availableTokens("a", WINDOW - 1)).isZero();
+    }
+
+    @Test
+    void memoryIsIndependentOfTheNumberOfKeys() {
+        var limiter = CountMinSketchRateLimiter.<String>withErrorBound(20, WINDOW, 0.01, 0.01);
+        int counters = limiter.counterCount();
+
+        // epsilon * N = 0.01 * 1_000 = 10 < rate, so every key's first permit is within the error bound
+        long now = 0;
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(limiter.tryAcquire("client-" + i, now, 1).isAcquired()).isTrue();
+        }
+        assertThat(limiter.counterCount()).isEqualTo(counters);
+    }
+
+    @Test
+    void overcountStaysWithinTheErrorBound() {
+        double epsilon = 0.01;
+        var limiter = CountMinSketchRateLimiter.<String>withErrorBound(1_000, WINDOW, epsilon, 0.001);
+        long now = 0;
+        long total = 0;
+        for (int i = 0; i < 2_000; i++) {
+            long permits = 1 + i % 3;
+            assertThat(limiter.tryAcquire("user-" + i, now, permits).isAcquired()).isTrue();
+            total += permits;
+        }
+
+        for (int i = 0; i < 2_000; i++) {
+            long used = 1 + i % 3;
+            long estimatedUsed = 1_000 - limiter.availableTokens("user-" + i, now);
+            assertThat(estimatedUsed).isBetween(used, used + (long) Math.ceil(epsilon * total));
+        }
+    }
+
+    @Test
+    void rejectsInvalidParameters() {
+        assertThatThrownBy(() -> new CountMinSketchRateLimiter<String>(10, WINDOW, 0, 4))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThatThrownBy(() -> CountMinSketchRateLimiter.withErrorBound(10, WINDOW, 0, 0.1))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        var limiter = new CountMinSketchRateLimiter<String>(10, WINDOW, 16, 2);
+        assertThatThrownBy(() -> limiter.tryAcquire("k", 0, 11)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
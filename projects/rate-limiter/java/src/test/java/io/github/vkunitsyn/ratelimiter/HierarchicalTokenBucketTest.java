@@ -0,0 +1,122 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class HierarchicalTokenBucketTest {
+    private static final long PERIOD = Duration.ofMillis(100).toNanos();
+
+    @Test
+    void idleCapacityIsBorrowedUpToTheCeiling() {
+        var tree = new HierarchicalTokenBucket(100, 100, PERIOD);
+        var a = tree.root().addChild(30, 80, 80);
+        tree.root().addChild(70, 100, 100);
+        long t0 = 1_000L;
+
+        assertThat(a.availableTokens(t0)).isEqualTo(80);
+        assertThat(a.tryAcquire(t0, 80).isAcquired()).isTrue();
+
+        var capped = a.tryAcquire(t0, 1);
+        assertThat(capped.isAcquired()).isFalse();
+        assertThat(capped.retryAfterNanos()).isEqualTo(PERIOD);
+        assertThat(tree.root().availableTokens(t0)).isEqualTo(20);
+    }
+
+    @Test
+    void guaranteesHoldWhileOthersBorrowed() {
+        var tree = new HierarchicalTokenBucket(100, 100, PERIOD);
+        var a = tree.root().addChild(30, 80, 80);
+        var b = tree.root().addChild(70, 100, 100);
+        long t0 = 1_000L;
+
+        assertThat(a.tryAcquire(t0, 80).isAcquired()).isTrue();
+        // the pool is down to 20, but 70 are b's own
+        assertThat(b.tryAcquire(t0, 70).isAcquired()).isTrue();
+        assertThat(tree.root().availableTokens(t0)).isZero();
+
+        var borrow = b.tryAcquire(t0, 1);
+        assertThat(borrow.isAcquired()).isFalse();
+        assertThat(borrow.retryAfterNanos()).isEqualTo(PERIOD);
+
+        // next period: both get their guarantee, nobody can borrow the pool's debt
+        long t1 = t0 + PERIOD;
+        assertThat(a.tryAcquire(t1, 30).isAcquired()).isTrue();
+        assertThat(b.tryAcquire(t1, 70).isAcquired()).isTrue();
+        assertThat(a.tryAcquire(t1, 1).isAcquired()).isFalse();
+        assertThat(b.tryAcquire(t1, 1).isAcquired()).isFalse();
+    }
+
+    @Test
+    void borrowingResolvesThroughInnerNodes() {
+        var tree = new HierarchicalTokenBucket(100, 100, PERIOD);
+        var team = tree.root().addChild(50, 100, 100);
+        var tenant = team.addChild(10, 60, 60);
+        long t0 = 1_000L;
+
+        // 10 guaranteed, 40 from the team, the rest from the root
+        assertThat(tenant.tryAcquire(t0, 10).isAcquired()).isTrue();
+        assertThat(tenant.tryAcquire(t0, 40).isAcquired()).isTrue();
+        assertThat(tenant.tryAcquire(t0, 10).isAcquired()).isTrue();
+        assertThat(team.availableTokens(t0)).isEqualTo(40);
+        assertThat(tenant.availableTokens(t0)).isZero();
+        assertThat(tenant.retryAfterNanos(t0, 1)).isEqualTo(PERIOD);
+    }
+
+    @Test
+    void concurrentBorrowersNeverExceedTheirCeiling() throws InterruptedException {
+        var tree = new HierarchicalTokenBucket(1_000, 1_000, PERIOD);
+        var leaves = new ArrayList<HierarchicalTokenBucket.Node>();
+        for (int i = 0; i < 4; i++) {
+            leaves.add(tree.root().addChild(100, 400, 400));
+        }
+        var granted = new AtomicLong[4];
+        var start = new CountDownLatch(1);
+        var threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            int leaf = i;
+            granted[leaf] = new AtomicLong();
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int n = 0; n < 2_000; n++) {
+                    if (leaves.get(leaf).tryAcquire(0, 1).isAcquired()) {
+                        granted[leaf].incrementAndGet();
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        long total = 0;
+        for (int i = 0; i < 4; i++) {
+            threads.get(i).join();
+            assertThat(granted[i].get()).isBetween(100L, 400L);
+            total += granted[i].get();
+        }
+        // the pool plus every guarantee at most
+        assertThat(total).isBetween(1_000L, 1_400L);
+    }
+
+    @Test
+    void rejectsInvalidTrees() {
+        var tree = new HierarchicalTokenBucket(100, 200, PERIOD);
+        var root = tree.root();
+        assertThatThrownBy(() -> root.addChild(10, 150, 150)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> root.addChild(20, 10, 50)).isInstanceOf(IllegalArgumentException.class);
+        root.addChild(60, 100, 100);
+        assertThatThrownBy(() -> root.addChild(50, 100, 100)).isInstanceOf(IllegalArgumentException.class);
+
+        var leaf = root.addChild(40, 50, 50);
+        assertThatThrownBy(() -> leaf.tryAcquire(0, 51)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HierarchicalTokenBucket(100, 50, PERIOD))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,191 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class KeyedFixedWindowCounterTest {
+    private static final long WINDOW = Duration.ofSeconds(1).toNanos();
+
+    @Test
+    void keysShareWindowsButNotPermits() {
+        var limiter = new KeyedFixedWindowCounter<String>(3, WINDOW);
+        long t0 = 5 * WINDOW + 250;
+
+        assertThat(limiter.tryAcquire("a", t0, 3).isAcquired()).isTrue();
+        var rejected = limiter.tryAcquire("a", t0, 1);
+        assertThat(rejected.isAcquired()).isFalse();
+        assertThat(rejected.retryAfterNanos()).isEqualTo(WINDOW - 250);
+        assertThat(limiter.retryAfterNanos("a", t0, 1)).isEqualTo(WINDOW - 250);
+        assertThat(limiter.availableTokens("a", t0)).isZero();
+
+        assertThat(limiter.availableTokens("b", t0)).isEqualTo(3);
+        assertThat(limiter.tryAcquire("b", t0, 2).isAcquired()).isTrue();
+        assertThat(limiter.availableTokens("b", t0)).isEqualTo(1);
+    }
+
+    @Test
+    void rolloverFreesEveryKeyWithoutTouchingIt() {
+        var limiter = new KeyedFixedWindowCounter<Integer>(2, WINDOW);
+        for (int key = 0; key < 1_000; key++) {
+            assertThat(limiter.tryAcquire(key, 0, 2).isAcquired()).isTrue();
+            assertThat(limiter.availableTokens(key, WINDOW - 1)).isZero();
+        }
+
+        // one acquisition in the next window advances the shared window for all keys
+        assertThat(limiter.tryAcquire(-1, WINDOW, 1).isAcquired()).isTrue();
+        for (int key = 0; key < 1_000; key++) {
+            assertThat(limiter.availableTokens(key, WINDOW)).isEqualTo(2);
+        }
+        assertThat(limiter.tryAcquire(7, WINDOW + 1, 2).isAcquired()).isTrue();
+        assertThat(limiter.keyCount()).isEqualTo(1_001);
+    }
+
+    @Test
+    void staleTimeCountsAgainstTheLatestWindow() {
+        var limiter = new KeyedFixedWindowCounter<String>(1, WINDOW);
+        assertThat(limiter.tryAcquire("a", 2 * WINDOW, 1).isAcquired()).isTrue();
+
+        var stale = limiter.tryAcquire("a", WINDOW, 1);
+        assertThat(stale.isAcquired()).isFalse();
+        assertThat(stale.retryAfterNanos()).isEqualTo(2 * WINDOW);
+        assertThat(limiter.availableTokens("b", WINDOW)).isEqualTo(1);
+    }
+
+    @Test
+    void keysIdleForAWrappedTagAreStale() {
+        var limiter = new KeyedFixedWindowCounter<String>(1, 1);
+        assertThat(limiter.tryAcquire("a", 0, 1).isAcquired()).isTrue();
+
+        // 2^32 - 5 windows later the 32-bit tag reads as 5 windows ahead, which the shared window is not
+        long later = (1L << 32) - 5;
+        assertThat(limiter.availableTokens("a", later)).isEqualTo(1);
+        assertThat(limiter.tryAcquire("a", later, 1).isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire("a", later, 1).retryAfterNanos()).isEqualTo(1);
+        assertThat(limiter.tryAcquire("a", later + 1, 1).isAcquired()).isTrue();
+    }
+
+    @Test
+    void readsDoNotAdvanceTheSharedWindow() {
+        var limiter = new KeyedFixedWindowCounter<String>(2, WINDOW);
+        assertThat(limiter.tryAcquire("a", 0, 2).isAcquired()).isTrue();
+
+        assertThat(limiter.availableTokens("b", 3 * WINDOW)).isEqualTo(2);
+        assertThat(limiter.retryAfterNanos("b", 3 * WINDOW, 2)).isZero();
+
+        // a late acquisition still counts against its own window, the reads above did not move it on
+        var late = limiter.tryAcquire("a", WINDOW - 1, 1);
+        assertThat(late.isAcquired()).isFalse();
+        assertThat(late.retryAfterNanos()).isEqualTo(1);
+    }
+
+    @Test
+    void evictStaleRemovesOnlyKeysIdleInTheCurrentWindow() {
+        var limiter = new KeyedFixedWindowCounter<String>(2, WINDOW);
+        assertThat(limiter.tryAcquire("idle", 0, 2).isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire("busy", 0, 1).isAcquired()).isTrue();
+        assertThat(limiter.evictStale(WINDOW - 1)).isZero();
+
+        assertThat(limiter.tryAcquire("busy", WINDOW, 2).isAcquired()).isTrue();
+        assertThat(limiter.evictStale(WINDOW)).isEqualTo(1);
+        assertThat(limiter.keyCount()).isEqualTo(1);
+        assertThat(limiter.availableTokens("busy", WINDOW)).isZero();
+        assertThat(limiter.availableTokens("idle", WINDOW)).isEqualTo(2);
+
+        assertThat(limiter.tryAcquire("idle", WINDOW, 2).isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire("idle", WINDOW, 1).isAcquired()).isFalse();
+        assertThat(limiter.evictStale(2 * WINDOW)).isEqualTo(2);
+        assertThat(limiter.keyCount()).isZero();
+    }
+
+    @Test
+    void acquisitionsRacingEvictionAreNeverLost() throws InterruptedException {
+        var limiter = new KeyedFixedWindowCounter<String>(1, 1);
+        var now = new AtomicLong();
+        var done = new CountDownLatch(1);
+        Thread evictor = Thread.ofPlatform().start(() -> {
+            while (done.getCount() > 0) {
+                limiter.evictStale(now.get());
+            }
+        });
+        try {
+            // the key is stale at the start of every window, so the evictor keeps racing its first acquisition
+            for (long window = 1; window <= 200_000; window++) {
+                now.set(window);
+                boolean first = limiter.tryAcquire("a", window, 1).isAcquired();
+                boolean second = limiter.tryAcquire("a", window, 1).isAcquired();
+                assertThat(first && second).isFalse();
+            }
+        } finally {
+            done.countDown();
+            evictor.join();
+        }
+    }
+
+    @Test
+    void decidesLikeOneFixedWindowCounterPerKey() {
+        var keyed = new KeyedFixedWindowCounter<Integer>(10, WINDOW);
+        var reference = new PerKeyRateLimiter<Integer>(() -> new FixedWindowCounter(10, WINDOW));
+        var random = new SplittableRandom(45);
+        long now = -3 * WINDOW;
+
+        for (int i = 0; i < 50_000; i++) {
+            now += random.nextLong(WINDOW / 20);
+            int key = random.nextInt(50);
+            long permits = 1 + random.nextLong(4);
+
+            var expected = reference.tryAcquire(key, now, permits);
+            var actual = keyed.tryAcquire(key, now, permits);
+            assertThat(actual).isEqualTo(expected);
+            assertThat(keyed.availableTokens(key, now)).isEqualTo(reference.availableTokens(key, now));
+            assertThat(keyed.retryAfterNanos(key, now, permits))
+                    .isEqualTo(reference.retryAfterNanos(key, now, permits));
+        }
+    }
+
+    @Test
+    void concurrentAcquisitionsNeverExceedTheRate() throws InterruptedException {
+        var limiter = new KeyedFixedWindowCounter<String>(10_000, WINDOW);
+        var granted = new AtomicLong();
+        var start = new CountDownLatch(1);
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 5_000; i++) {
+                    if (limiter.tryAcquire("hot", WINDOW / 2, 1).isAcquired()) {
+                        granted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(granted.get()).isEqualTo(10_000);
+        assertThat(limiter.availableTokens("hot", WINDOW / 2)).isZero();
+    }
+
+    @Test
+    void rejectsInvalidParameters() {
+        assertThatThrownBy(() -> new KeyedFixedWindowCounter<String>(0, WINDOW))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new KeyedFixedWindowCounter<String>((1L << 32) - 1, WINDOW))
+                .isInstanceOf(IllegalArgumentException.class);
+        var limiter = new KeyedFixedWindowCounter<String>(5, WINDOW);
+        assertThatThrownBy(() -> limiter.tryAcquire("a", 0, 6)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> limiter.retryAfterNanos("a", 0, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.vkunitsyn.ratelimiter.MultiBandRateLimiter.Band;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class MultiBandRateLimiterTest {
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+    private static final long MINUTE = Duration.ofMinutes(1).toNanos();
+
+    @Test
+    void everyBandMustHaveRoom() {
+        var limiter = new MultiBandRateLimiter(new Band(20, SECOND), new Band(50, MINUTE));
+        long t0 = 0;
+
+        assertThat(limiter.tryAcquire(t0, 20).isAcquired()).isTrue();
+        var perSecond = limiter.tryAcquire(t0 + 10, 1);
+        assertThat(perSecond.isAcquired()).isFalse();
+        assertThat(perSecond.retryAfterNanos()).isEqualTo(SECOND - 10);
+        assertThat(limiter.bindingBand(t0 + 10, 1)).isZero();
+
+        assertThat(limiter.tryAcquire(t0 + SECOND, 20).isAcquired()).isTrue();
+        assertThat(limiter.availableTokens(t0 + 2 * SECOND)).isEqualTo(10);
+
+        // the minute band binds now, even though the second band would have room
+        var perMinute = limiter.tryAcquire(t0 + 2 * SECOND, 11);
+        assertThat(perMinute.isAcquired()).isFalse();
+        assertThat(perMinute.retryAfterNanos()).isEqualTo(MINUTE - 2 * SECOND);
+        assertThat(limiter.bindingBand(t0 + 2 * SECOND, 11)).isEqualTo(1);
+        assertThat(limiter.bindingBand(t0 + 2 * SECOND, 10)).isEqualTo(-1);
+    }
+
+    @Test
+    void rejectionChargesNoBand() {
+        var limiter = new MultiBandRateLimiter(new Band(5, SECOND), new Band(10, MINUTE));
+
+        assertThat(limiter.tryAcquire(0, 5).isAcquired()).isTrue();
+        for (int i = 0; i < 100; i++) {
+            assertThat(limiter.tryAcquire(1, 1).isAcquired()).isFalse();
+        }
+        // the minute band still has its 5 permits left
+        assertThat(limiter.tryAcquire(SECOND, 5).isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire(2 * SECOND, 1).isAcquired()).isFalse();
+    }
+
+    @Test
+    void tryAcquireUpToGrantsWhatTheTightestBandAllows() {
+        var limiter = new MultiBandRateLimiter(new Band(5, SECOND), new Band(8, MINUTE));
+
+        assertThat(limiter.tryAcquireUpTo(0, 10, 1)).isEqualTo(new RateLimiter.AcquireResult.Acquired(5));
+        // the second band has 3 left, the first one is full again
+        assertThat(limiter.tryAcquireUpTo(SECOND, 10, 1)).isEqualTo(new RateLimiter.AcquireResult.Acquired(3));
+        assertThat(limiter.tryAcquireUpTo(2 * SECOND, 2, 1).retryAfterNanos()).isEqualTo(MINUTE - 2 * SECOND);
+        assertThat(limiter.availableTokens(MINUTE)).isEqualTo(5);
+    }
+
+    @Test
+    void retryAfterWaitsForEveryFullBand() {
+        var limiter = new MultiBandRateLimiter(new Band(10, SECOND), new Band(10, MINUTE));
+
+        assertThat(limiter.tryAcquire(0, 10).isAcquired()).isTrue();
+        // both bands are out, the second rolls over first but the minute one decides
+        assertThat(limiter.retryAfterNanos(5, 1)).isEqualTo(MINUTE - 5);
+        assertThat(limiter.tryAcquire(MINUTE, 10).isAcquired()).isTrue();
+    }
+
+    @Test
+    void rejectsInvalidConfiguration() {
+        assertThatThrownBy(MultiBandRateLimiter::new).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new Band(0, SECOND)).isInstanceOf(IllegalArgumentException.class);
+
+        var limiter = new MultiBandRateLimiter(new Band(20, SECOND), new Band(5, MINUTE));
+        assertThatThrownBy(() -> limiter.tryAcquire(0, 6)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class PerKeyRateLimiterTest {
+    private static final long PERIOD = Duration.ofMillis(100).toNanos();
+
+    @Test
+    void keysAreLimitedIndependently() {
+        var limiter = new PerKeyRateLimiter<String>(() -> new TokenBucket(2, 1, PERIOD));
+        long t0 = 1_000L;
+
+        assertThat(limiter.tryAcquire("a", t0, 2).isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire("a", t0, 1).isAcquired()).isFalse();
+
+        assertThat(limiter.tryAcquire("b", t0, 1).isAcquired()).isTrue();
+        assertThat(limiter.availableTokens("b", t0)).isEqualTo(1);
+        assertThat(limiter.retryAfterNanos("a", t0, 1)).isEqualTo(PERIOD);
+    }
+
+    @Test
+    void readsForUnknownKeysDoNotCreateState() {
+        var limiter = new PerKeyRateLimiter<String>(() -> new FixedWindowCounter(5, PERIOD));
+        long t0 = 1_000L;
+
+        assertThat(limiter.availableTokens("unknown", t0)).isEqualTo(5);
+        assertThat(limiter.retryAfterNanos("unknown", t0, 5)).isZero();
+        assertThat(limiter.size()).isZero();
+
+        assertThat(limiter.tryAcquire("known", t0, 1).isAcquired()).isTrue();
+        assertThat(limiter.size()).isEqualTo(1);
+    }
+
+    @Test
+    void evictsKeysOnceTheirLimiterHasRecovered() {
+        var limiter = new PerKeyRateLimiter<String>(() -> new TokenBucket(2, 1, PERIOD));
+        long t0 = 1_000L;
+        assertThat(limiter.tryAcquire("a", t0, 2).isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire("b", t0, 1).isAcquired()).isTrue();
+
+        assertThat(limiter.evictIdle(t0 + PERIOD)).isEqualTo(1);
+        assertThat(limiter.size()).isEqualTo(1);
+        assertThat(limiter.availableTokens("a", t0 + PERIOD)).isEqualTo(1);
+
+        assertThat(limiter.evictIdle(t0 + 2 * PERIOD)).isEqualTo(1);
+        assertThat(limiter.size()).isZero();
+        // an evicted key starts over with a full limiter, just like its old one
+        assertThat(limiter.tryAcquire("a", t0 + 2 * PERIOD, 2).isAcquired()).isTrue();
+    }
+
+    @Test
+    void repeatedRejectionsAreAnsweredWithoutTheLimiter() {
+        var calls = new AtomicInteger();
+        var limiter = new PerKeyRateLimiter<String>(
+                () -> new TokenBucket(5, 1, PERIOD) {
+                    @Override
+                    public AcquireResult tryAcquire(long nowNanos, long permits) {
+                        calls.incrementAndGet();
+                        return super.tryAcquire(nowNanos, permits);
+                    }
+                },
+                true);
+        long t0 = 1_000L;
+
+        assertThat(limiter.tryAcquire("abuser", t0, 5).isAcquired()).isTrue();
+        var first = limiter.tryAcquire("abuser", t0, 2);
+        assertThat(first.isAcquired()).isFalse();
+        assertThat(first.retryAfterNanos()).isEqualTo(2 * PERIOD);
+        assertThat(calls.get()).isEqualTo(2);
+
+        for (int i = 0; i < 100; i++) {
+            var cached = limiter.tryAcquire("abuser", t0 + PERIOD, 2);
+            assertThat(cached.isAcquired()).isFalse();
+            assertThat(cached.retryAfterNanos()).isEqualTo(PERIOD);
+        }
+        assertThat(calls.get()).isEqualTo(2);
+
+        // a larger request goes to the limiter and gets its own, longer retry-after
+        var larger = limiter.tryAcquire("abuser", t0 + PERIOD, 3);
+        assertThat(larger.isAcquired()).isFalse();
+        assertThat(larger.retryAfterNanos()).isEqualTo(2 * PERIOD);
+        assertThat(calls.get()).isEqualTo(3);
+
+        // a grant drops the record: the old retry-after would now be too short
+        assertThat(limiter.tryAcquire("abuser", t0 + PERIOD, 1).isAcquired()).isTrue();
+        var afterGrant = limiter.tryAcquire("abuser", t0 + PERIOD, 3);
+        assertThat(afterGrant.retryAfterNanos()).isEqualTo(3 * PERIOD);
+        assertThat(calls.get()).isEqualTo(5);
+
+        assertThat(limiter.tryAcquire("abuser", t0 + 4 * PERIOD, 3).isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire("other", t0, 2).isAcquired()).isTrue();
+    }
+
+    @Test
+    void rejectionsAreNotCachedByDefault() {
+        var limiter = new PerKeyRateLimiter<String>(() -> new SlidingWindowLog(2, PERIOD));
+        long t0 = 1_000L;
+
+        assertThat(limiter.tryAcquire("a", t0, 2).isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire("a", t0 + PERIOD / 2, 1).isAcquired()).isFalse();
+        assertThat(limiter.tryAcquire("a", t0 + PERIOD / 2 + 1, 1).isAcquired()).isFalse();
+        // the log charged both rejections, so the window is still full once the grant has slid out
+        assertThat(limiter.tryAcquire("a", t0 + PERIOD + 1, 1).isAcquired()).isFalse();
+    }
+}
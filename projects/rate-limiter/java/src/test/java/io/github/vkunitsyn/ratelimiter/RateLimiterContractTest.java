@@ -1,9 +1,15 @@
 package io.github.vkunitsyn.ratelimiter;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
+import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
@@ -14,7 +20,10 @@ static Stream<RateLimiter> limiters() {
                 new TokenBucket(10, 1, period),
                 new SpacingLeakyBucket(10, period),
                 new FixedWindowCounter(10, period),
-                new SlidingWindowLog(10, period));
+                new SlidingWindowLog(10, period),
+                new SlidingWindowLog(10, period, 10),
+                new MultiBandRateLimiter(
+                        new MultiBandRateLimiter.Band(10, period), new MultiBandRateLimiter.Band(30, 10 * period)));
     }
 
     @ParameterizedTest
@@ -38,4 +47,75 @@ void availableTokensIsNeverNegative(RateLimiter limiter) {
         long t0 = 999L;
         assertThat(limiter.availableTokens(t0)).isGreaterThanOrEqualTo(0);
     }
+
+    @ParameterizedTest
+    @MethodSource("limiters")
+    void readsDoNotChangeState(RateLimiter limiter) {
+        long t0 = 123_456L;
+        long later = t0 + Duration.ofSeconds(10).toNanos();
+        assertThat(limiter.tryAcquire(t0, 10).isAcquired()).isTrue();
+
+        assertThat(limiter.availableTokens(later)).isEqualTo(10);
+        assertThat(limiter.retryAfterNanos(later, 10)).isZero();
+
+        // had the reads refilled or trimmed anything, t0 would see the permits of the later time
+        assertThat(limiter.availableTokens(t0)).isZero();
+        assertThat(limiter.tryAcquire(t0, 1).isAcquired()).isFalse();
+    }
+
+    @ParameterizedTest
+    @MethodSource("limiters")
+    @Timeout(10)
+    void readsStayInBoundsWhileWritersRun(RateLimiter limiter) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            writers.add(Thread.ofPlatform().start(() -> {
+                while (running.get()) {
+                    limiter.tryAcquire(1 + (int) (System.nanoTime() & 1));
+                }
+            }));
+        }
+
+        try {
+            long deadline = System.nanoTime() + Duration.ofMillis(300).toNanos();
+            while (System.nanoTime() < deadline) {
+                assertThat(limiter.availableTokens()).isBetween(0L, 10L);
+                assertThat(limiter.retryAfterNanos(10)).isGreaterThanOrEqualTo(0);
+            }
+        } finally {
+            running.set(false);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("limiters")
+    void tryAcquireUpToGrantsWhatIsAvailableInOneCall(RateLimiter limiter) {
+        long t0 = 123_456L;
+
+        assertThat(limiter.tryAcquireUpTo(t0, 4, 2)).isEqualTo(new AcquireResult.Acquired(4));
+        assertThat(limiter.tryAcquireUpTo(t0, 100, 1)).isEqualTo(new AcquireResult.Acquired(6));
+        assertThat(limiter.availableTokens(t0)).isZero();
+
+        var rejected = limiter.tryAcquireUpTo(t0, 100, 1);
+        assertThat(rejected.isAcquired()).isFalse();
+        assertThat(rejected.retryAfterNanos()).isPositive();
+    }
+
+    @ParameterizedTest
+    @MethodSource("limiters")
+    void tryAcquireUpToRejectsBelowMinPermits(RateLimiter limiter) {
+        long t0 = 123_456L;
+        assertThat(limiter.tryAcquire(t0, 8).isAcquired()).isTrue();
+        long expectedRetryAfter = limiter.retryAfterNanos(t0, 3);
+
+        var rejected = limiter.tryAcquireUpTo(t0, 5, 3);
+        assertThat(rejected.isAcquired()).isFalse();
+        assertThat(rejected.retryAfterNanos()).isEqualTo(expectedRetryAfter);
+        assertThatThrownBy(() -> limiter.tryAcquireUpTo(t0, 2, 3)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> limiter.tryAcquireUpTo(t0, 5, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
 }
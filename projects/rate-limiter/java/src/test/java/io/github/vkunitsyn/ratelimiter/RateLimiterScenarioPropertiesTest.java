@@ -85,6 +85,37 @@ void slidingWindowLog_scenarios_hold_invariants(@ForAll("scenarios") List<Step>
         RateLimiter limiter = new SlidingWindowLog(CAPACITY, WINDOW_NANOS);
         runScenarioAndAssertInvariants("SlidingWindowLog", limiter, steps, CAPACITY);
     }
+
+    @Property(tries = 200)
+    void bucketedSlidingWindowLog_scenarios_hold_invariants(@ForAll("scenarios") List<Step> steps) {
+        RateLimiter limiter = new SlidingWindowLog(CAPACITY, WINDOW_NANOS, 60);
+        runScenarioAndAssertInvariants("SlidingWindowLog(buckets=60)", limiter, steps, CAPACITY);
+    }
+
+    /**
+     * Both logs record the same events (rejected ones included), and a bucketed event never leaves the window
+     * before the exact one does, so the bucketed log may only be stricter.
+     */
+    @Property(tries = 200)
+    void bucketedSlidingWindowLog_is_never_more_permissive_than_exact(@ForAll("scenarios") List<Step> steps) {
+        RateLimiter exact = new SlidingWindowLog(CAPACITY, WINDOW_NANOS);
+        RateLimiter bucketed = new SlidingWindowLog(CAPACITY, WINDOW_NANOS, 60);
+        long now = 1_000_000_000L;
+
+        for (int i = 0; i < steps.size(); i++) {
+            if (steps.get(i) instanceof StepAdvanceTime adv) {
+                now = Utils.saturatedAdd(now, adv.deltaNanos());
+                continue;
+            }
+            int permits = ((StepAcquire) steps.get(i)).permits();
+            boolean exactAcquired = exact.tryAcquire(now, permits).isAcquired();
+            boolean bucketedAcquired = bucketed.tryAcquire(now, permits).isAcquired();
+            if (bucketedAcquired) {
+                assertThat(exactAcquired).as("bucketed log acquired but exact log rejected at step %s", i).isTrue();
+            }
+            assertThat(bucketed.availableTokens(now)).isLessThanOrEqualTo(exact.availableTokens(now));
+        }
+    }
     /**
      * The core scenario runner.
      *
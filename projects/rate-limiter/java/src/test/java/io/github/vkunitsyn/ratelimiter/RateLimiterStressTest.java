@@ -0,0 +1,194 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.vkunitsyn.ratelimiter.MultiBandRateLimiter.Band;
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+import io.github.vkunitsyn.ratelimiter.concurrent.FlatCombiningRateLimiter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Phaser;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Hammers limiters from many threads on a virtual clock and checks that no window was over-granted.
+ *
+ * <p>Threads advance the clock together in rounds: a {@link Phaser} keeps every call of round {@code r} at the same
+ * virtual time and lets no thread start round {@code r + 1} before all have finished round {@code r}, so the calls
+ * within a round really race while time stays monotonic across threads. Every grant is recorded with its virtual
+ * time; afterwards the grants are merged and every window the limiter promises is summed. Calls mix
+ * {@code tryAcquire} and {@code tryAcquireUpTo}, in bursts of 10 periods separated by as many idle ones.
+ *
+ * <p>Each case also prints its throughput (calls per second of wall time, barrier waits included), so a faster
+ * variant can be compared and checked in the same run.
+ */
+class RateLimiterStressTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 2_000;
+    private static final int CALLS_PER_ROUND = 4;
+    private static final long PERIOD = 1_000_000L;
+    private static final long STEP = PERIOD / 20;
+    private static final long START = 7 * PERIOD + 123;
+
+    /**
+     * At most {@code limit} permits granted in any closed interval of {@code windowNanos}, or, if {@code aligned}, in
+     * any window {@code [k * windowNanos, (k + 1) * windowNanos)}.
+     */
+    record Window(long limit, long windowNanos, boolean aligned) {}
+
+    record StressCase(String name, Supplier<RateLimiter> factory, List<Window> windows) {
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static Stream<StressCase> cases() {
+        // refill 5 per period with a burst of 20: any 10 periods see at most 20 + 10 * 5
+        Window tokenBucket = new Window(70, 10 * PERIOD, false);
+        return Stream.of(
+                new StressCase("TokenBucket", () -> new TokenBucket(20, 5, PERIOD), List.of(tokenBucket)),
+                new StressCase(
+                        "TokenBucket continuous", () -> TokenBucket.continuous(20, 5, PERIOD), List.of(tokenBucket)),
+                new StressCase(
+                        "TokenBucket warm-up",
+                        () -> new TokenBucket(20, 5, PERIOD, 5 * PERIOD, 3),
+                        List.of(tokenBucket)),
+                new StressCase(
+                        "SpacingLeakyBucket", () -> new SpacingLeakyBucket(20, PERIOD / 5), List.of(tokenBucket)),
+                new StressCase(
+                        "FixedWindowCounter",
+                        () -> new FixedWindowCounter(50, 10 * PERIOD),
+                        List.of(new Window(50, 10 * PERIOD, true))),
+                new StressCase(
+                        "SlidingWindowLog",
+                        () -> new SlidingWindowLog(50, 10 * PERIOD),
+                        List.of(new Window(50, 10 * PERIOD, false))),
+                new StressCase(
+                        "SlidingWindowLog bucketed",
+                        () -> new SlidingWindowLog(50, 10 * PERIOD, 10),
+                        List.of(new Window(50, 10 * PERIOD, false))),
+                new StressCase(
+                        "MultiBandRateLimiter",
+                        () -> new MultiBandRateLimiter(new Band(10, 2 * PERIOD), new Band(50, 10 * PERIOD)),
+                        List.of(new Window(10, 2 * PERIOD, true), new Window(50, 10 * PERIOD, true))),
+                new StressCase(
+                        "FlatCombiningRateLimiter",
+                        () -> new FlatCombiningRateLimiter(new TokenBucket(20, 5, PERIOD)),
+                        List.of(tokenBucket)),
+                new StressCase(
+                        "HierarchicalTokenBucket leaf",
+                        () -> new HierarchicalTokenBucket(100, 100, PERIOD).root().addChild(5, 10, 20),
+                        List.of(new Window(120, 10 * PERIOD, false))));
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    @Timeout(60)
+    void concurrentCallsNeverOverGrant(StressCase stressCase) throws InterruptedException {
+        RateLimiter limiter = stressCase.factory().get();
+        long[][] times = new long[THREADS][ROUNDS * CALLS_PER_ROUND];
+        long[][] granted = new long[THREADS][ROUNDS * CALLS_PER_ROUND];
+        Phaser rounds = new Phaser(THREADS);
+
+        List<Thread> threads = new ArrayList<>();
+        long startNanos = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            var random = new SplittableRandom(thread);
+            threads.add(Thread.ofPlatform()
+                    .start(() -> hammer(limiter, rounds, random, times[thread], granted[thread])));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        long[][] grants = merge(times, granted);
+        long total = Arrays.stream(grants[1]).sum();
+        long calls = (long) THREADS * ROUNDS / 2 * CALLS_PER_ROUND;
+        System.out.printf(
+                "%-30s %,12.0f calls/s  %,7d permits granted%n", stressCase, calls * 1e9 / elapsedNanos, total);
+
+        assertThat(total).isPositive();
+        for (Window window : stressCase.windows()) {
+            long busiest = window.aligned() ? busiestAligned(grants, window) : busiestSliding(grants, window);
+            assertThat(busiest).as("%s, %s", stressCase, window).isLessThanOrEqualTo(window.limit());
+        }
+    }
+
+    private static void hammer(
+            RateLimiter limiter, Phaser rounds, SplittableRandom random, long[] times, long[] granted) {
+        int call = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long nowNanos = START + round * STEP;
+            // every other stretch of 10 periods is idle, so windows drain and buckets refill (or cool down)
+            boolean idle = round % 400 >= 200;
+            for (int i = 0; i < CALLS_PER_ROUND; i++) {
+                times[call] = nowNanos;
+                granted[call++] = idle ? 0 : acquire(limiter, random, nowNanos);
+            }
+            rounds.arriveAndAwaitAdvance();
+        }
+    }
+
+    /** One random call, returns the permits granted. */
+    private static long acquire(RateLimiter limiter, SplittableRandom random, long nowNanos) {
+        long permits = 1 + random.nextLong(3);
+        AcquireResult result = random.nextInt(4) == 0
+                ? limiter.tryAcquireUpTo(nowNanos, permits + 3, permits)
+                : limiter.tryAcquire(nowNanos, permits);
+        return result instanceof AcquireResult.Acquired acquired ? acquired.permits() : 0;
+    }
+
+    /** Sums the grants of all threads per virtual time: {@code [0]} times in ascending order, {@code [1]} permits. */
+    private static long[][] merge(long[][] times, long[][] granted) {
+        long[] permitsPerRound = new long[ROUNDS];
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < times[t].length; i++) {
+                permitsPerRound[(int) ((times[t][i] - START) / STEP)] += granted[t][i];
+            }
+        }
+        long[] roundTimes = new long[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            roundTimes[round] = START + round * STEP;
+        }
+        return new long[][] {roundTimes, permitsPerRound};
+    }
+
+    private static long busiestAligned(long[][] grants, Window window) {
+        long busiest = 0;
+        long currentWindow = Long.MIN_VALUE;
+        long sum = 0;
+        for (int i = 0; i < grants[0].length; i++) {
+            long index = Math.floorDiv(grants[0][i], window.windowNanos());
+            if (index != currentWindow) {
+                currentWindow = index;
+                sum = 0;
+            }
+            sum += grants[1][i];
+            busiest = Math.max(busiest, sum);
+        }
+        return busiest;
+    }
+
+    private static long busiestSliding(long[][] grants, Window window) {
+        long busiest = 0;
+        long sum = 0;
+        int end = 0;
+        for (int start = 0; start < grants[0].length; start++) {
+            while (end < grants[0].length && grants[0][end] <= grants[0][start] + window.windowNanos()) {
+                sum += grants[1][end++];
+            }
+            busiest = Math.max(busiest, sum);
+            sum -= grants[1][start];
+        }
+        return busiest;
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+class RejectedKeysTrackerTest {
+    private static final long PERIOD = Duration.ofSeconds(10).toNanos();
+
+    @Test
+    void reportsHeavyHittersAmongManyRareKeys() {
+        var tracker = new RejectedKeysTracker<String>(64, 4, PERIOD);
+        long now = 0;
+        for (int i = 0; i < 10_000; i++) {
+            tracker.record("noise-" + i, now);
+            if (i % 10 == 0) {
+                tracker.record("abuser-1", now);
+            }
+            if (i % 20 == 0) {
+                tracker.record("abuser-2", now);
+            }
+        }
+
+        List<RejectedKeysTracker.Entry<String>> top = tracker.topRejected(2, now);
+        assertThat(top).hasSize(2);
+        assertThat(top.get(0).key()).isEqualTo("abuser-1");
+        assertThat(top.get(1).key()).isEqualTo("abuser-2");
+        for (var entry : top) {
+            long real = entry.key().equals("abuser-1") ? 1_000 : 500;
+            assertThat(entry.count()).isBetween(real, real + entry.error());
+            assertThat(entry.count() - entry.error()).isLessThanOrEqualTo(real);
+        }
+    }
+
+    @Test
+    void boundsHoldForEveryTrackedKeyOnASkewedStream() {
+        var tracker = new RejectedKeysTracker<Integer>(32, 1, PERIOD);
+        var real = new HashMap<Integer, Long>();
+        var random = new SplittableRandom(30);
+        for (int i = 0; i < 100_000; i++) {
+            // roughly Zipf: small keys are much more frequent
+            int key = (int) Math.floor(Math.exp(random.nextDouble() * Math.log(5_000)));
+            tracker.record(key, 0);
+            real.merge(key, 1L, Long::sum);
+        }
+
+        List<RejectedKeysTracker.Entry<Integer>> top = tracker.topRejected(32, 0);
+        assertThat(top).hasSize(32);
+        for (var entry : top) {
+            long count = real.get(entry.key());
+            assertThat(entry.count()).isGreaterThanOrEqualTo(count);
+            assertThat(entry.count() - entry.error()).isLessThanOrEqualTo(count);
+        }
+        // every key above 1 / capacity of the stream is tracked
+        real.forEach((key, count) -> {
+            if (count > 100_000 / 32) {
+                assertThat(top.stream().anyMatch(entry -> entry.key().equals(key))).isTrue();
+            }
+        });
+    }
+
+    @Test
+    void countsFadeOutOverTheSlidingPeriod() {
+        var tracker = new RejectedKeysTracker<String>(8, 1, PERIOD);
+        long t0 = 5 * PERIOD;
+        for (int i = 0; i < 100; i++) {
+            tracker.record("k", t0);
+        }
+
+        assertThat(tracker.topRejected(1, t0).getFirst().count()).isEqualTo(100);
+        // a quarter into the next period three quarters of the previous one are still in the sliding period
+        assertThat(tracker.topRejected(1, 6 * PERIOD + PERIOD / 4).getFirst().count()).isEqualTo(75);
+        assertThat(tracker.topRejected(1, 7 * PERIOD)).isEmpty();
+    }
+
+    @Test
+    void attachedLimiterRecordsOnlyRejections() {
+        var tracker = new RejectedKeysTracker<String>(16, 2, PERIOD);
+        var limiter = tracker.attachTo(new PerKeyRateLimiter<>(() -> new FixedWindowCounter(2, PERIOD)));
+        long now = 1_000;
+
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire("a", now, 1);
+        }
+        limiter.tryAcquire("b", now, 1);
+
+        assertThat(tracker.topRejected(10, now)).containsExactly(new RejectedKeysTracker.Entry<>("a", 3, 0));
+        assertThat(limiter.availableTokens("b", now)).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsInvalidParameters() {
+        assertThatThrownBy(() -> new RejectedKeysTracker<String>(0, 1, PERIOD))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new RejectedKeysTracker<String>(8, 1, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -65,4 +65,67 @@ void rejectsInvalidPermits() {
 
         assertThatThrownBy(() -> limiter.tryAcquire(1_000, -1)).isInstanceOf(IllegalArgumentException.class);
     }
+
+    @Test
+    void bucketedModeKeepsExactSemanticsWithinOneSubWindow() {
+        long window = Duration.ofMillis(100).toNanos();
+        int buckets = 10;
+        long bucket = window / buckets;
+        RateLimiter limiter = new SlidingWindowLog(2, window, buckets);
+
+        long t0 = 1_000L;
+        assertThat(limiter.tryAcquire(t0, 2).isAcquired()).isTrue();
+        assertThat(limiter.availableTokens(t0)).isZero();
+
+        var rejected = limiter.tryAcquire(t0, 1);
+        assertThat(rejected.isAcquired()).isFalse();
+        assertThat(rejected.retryAfterNanos()).isBetween(window, window + bucket);
+
+        // at the exact window boundary the events are still in the window, as in the exact log
+        assertThat(limiter.tryAcquire(t0 + window, 1).isAcquired()).isFalse();
+
+        // one sub-window later they are gone for sure (the rejected attempt above still counts, by design)
+        assertThat(limiter.tryAcquire(t0 + window + bucket, 1).isAcquired()).isTrue();
+    }
+
+    @Test
+    void bucketedModeRetryAfterIsExactForBucketAlignedEvents() {
+        long window = Duration.ofMillis(100).toNanos();
+        long bucket = Duration.ofMillis(10).toNanos();
+        RateLimiter limiter = new SlidingWindowLog(3, window, 10);
+
+        // last nanosecond of a sub-window: quantization does not move the event at all
+        long t0 = 5 * bucket - 1;
+        assertThat(limiter.tryAcquire(t0, 1).isAcquired()).isTrue();
+        long t1 = t0 + 2 * bucket;
+        assertThat(limiter.tryAcquire(t1, 2).isAcquired()).isTrue();
+
+        assertThat(limiter.retryAfterNanos(t1, 1)).isEqualTo(window - 2 * bucket);
+        assertThat(limiter.retryAfterNanos(t1, 2)).isEqualTo(window);
+    }
+
+    @Test
+    void bucketedModeUsesFixedMemoryForAnyNumberOfEvents() {
+        long window = Duration.ofSeconds(1).toNanos();
+        RateLimiter limiter = new SlidingWindowLog(1_000, window, 60);
+
+        long now = 0;
+        long acquired = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            now += 1_000; // 1M events per second, far more than the 61 slots can hold one by one
+            if (limiter.tryAcquire(now, 1).isAcquired()) {
+                acquired++;
+            }
+        }
+        assertThat(acquired).isGreaterThan(0L);
+        assertThat(limiter.availableTokens(now)).isZero();
+        assertThat(limiter.availableTokens(now + 2 * window)).isEqualTo(1_000);
+    }
+
+    @Test
+    void rejectsInvalidBuckets() {
+        long window = Duration.ofMillis(100).toNanos();
+
+        assertThatThrownBy(() -> new SlidingWindowLog(1, window, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
 }
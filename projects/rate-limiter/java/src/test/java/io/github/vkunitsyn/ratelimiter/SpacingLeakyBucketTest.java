@@ -58,4 +58,22 @@ void rejectsInvalidPermits() {
 
         assertThatThrownBy(() -> limiter.tryAcquire(1_000, 11)).isInstanceOf(IllegalArgumentException.class);
     }
+
+    @Test
+    void lowerPriorityClassesLeaveTheirReserveOfTheBurst() {
+        long interval = 1_000_000L;
+        var limiter = new SpacingLeakyBucket(10, interval, new long[] {0, 4});
+        long t0 = 1_000_000_000L;
+
+        assertThat(limiter.availableTokens(t0, 1)).isEqualTo(6);
+        assertThat(limiter.tryAcquire(t0, 6, 1).isAcquired()).isTrue();
+        var low = limiter.tryAcquire(t0, 1, 1);
+        assertThat(low.isAcquired()).isFalse();
+        assertThat(low.retryAfterNanos()).isEqualTo(interval);
+
+        assertThat(limiter.availableTokens(t0)).isEqualTo(4);
+        assertThat(limiter.tryAcquire(t0, 4, 0).isAcquired()).isTrue();
+        assertThat(limiter.retryAfterNanos(t0, 1)).isEqualTo(interval);
+        assertThat(limiter.retryAfterNanos(t0, 1, 1)).isEqualTo(5 * interval);
+    }
 }
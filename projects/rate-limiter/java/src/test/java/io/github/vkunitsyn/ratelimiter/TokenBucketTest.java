@@ -4,6 +4,7 @@
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.time.Duration;
+import java.util.SplittableRandom;
 import org.junit.jupiter.api.Test;
 
 class TokenBucketTest {
@@ -81,4 +82,158 @@ void rejectsInvalidPermits() {
 
         assertThatThrownBy(() -> limiter.tryAcquire(1_000, 11)).isInstanceOf(IllegalArgumentException.class);
     }
+
+    @Test
+    void lowerPriorityClassesCannotTouchTheirReserve() {
+        long period = Duration.ofMillis(100).toNanos();
+        // class 0: health checks, class 1: paid, class 2: free
+        var limiter = new TokenBucket(10, 1, period, new long[] {0, 2, 5});
+        long t0 = 1_000L;
+
+        assertThat(limiter.availableTokens(t0, 2)).isEqualTo(5);
+        assertThat(limiter.tryAcquire(t0, 5, 2).isAcquired()).isTrue();
+        var free = limiter.tryAcquire(t0, 1, 2);
+        assertThat(free.isAcquired()).isFalse();
+        assertThat(free.retryAfterNanos()).isEqualTo(period);
+
+        assertThat(limiter.tryAcquire(t0, 3, 1).isAcquired()).isTrue();
+        assertThat(limiter.tryAcquire(t0, 1, 1).isAcquired()).isFalse();
+        assertThat(limiter.retryAfterNanos(t0, 1, 1)).isEqualTo(period);
+        assertThat(limiter.retryAfterNanos(t0, 1, 2)).isEqualTo(4 * period);
+
+        assertThat(limiter.tryAcquire(t0, 2).isAcquired()).isTrue();
+        assertThat(limiter.availableTokens(t0)).isZero();
+        assertThat(limiter.availableTokens(t0 + 3 * period, 1)).isEqualTo(1);
+        assertThat(limiter.availableTokens(t0 + 3 * period, 2)).isZero();
+    }
+
+    @Test
+    void rejectsInvalidPriorityClasses() {
+        long period = Duration.ofMillis(100).toNanos();
+        assertThatThrownBy(() -> new TokenBucket(10, 1, period, new long[] {0, 5, 2}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TokenBucket(10, 1, period, new long[] {0, 10}))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        var limiter = new TokenBucket(10, 1, period, new long[] {0, 4});
+        assertThatThrownBy(() -> limiter.tryAcquire(1_000, 1, 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> limiter.tryAcquire(1_000, 7, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void warmUpStartsColdAndRampsToTheSteadyRate() {
+        long period = Duration.ofMillis(100).toNanos();
+        long warmUp = Duration.ofSeconds(1).toNanos();
+        var limiter = new TokenBucket(100, 10, period, warmUp, 3);
+        long t0 = 1_000_000_000L;
+
+        // no burst when cold
+        assertThat(limiter.availableTokens(t0)).isEqualTo(10);
+        assertThat(limiter.tryAcquire(t0, 10).isAcquired()).isTrue();
+
+        // the first refill is slower than steady, but faster than the cold rate alone
+        long retry = limiter.retryAfterNanos(t0, 10);
+        assertThat(retry).isGreaterThan(period).isLessThan(3 * period);
+        assertThat(limiter.tryAcquire(t0 + retry - 1, 10).isAcquired()).isFalse();
+        assertThat(limiter.tryAcquire(t0 + retry, 10).isAcquired()).isTrue();
+
+        // a greedy client that always comes back exactly at retry-after
+        long now = t0 + retry;
+        long intervalsDuringRamp = 0;
+        long lastInterval = 0;
+        while (now < t0 + 3 * warmUp) {
+            var result = limiter.tryAcquire(now, 10);
+            assertThat(result.isAcquired()).isFalse();
+            long wait = result.retryAfterNanos();
+            assertThat(limiter.tryAcquire(now + wait, 10).isAcquired()).isTrue();
+            if (now < t0 + warmUp) {
+                intervalsDuringRamp++;
+            }
+            lastInterval = wait;
+            now += wait;
+        }
+        assertThat(intervalsDuringRamp).isLessThan(warmUp / period - 1);
+        assertThat(lastInterval).isEqualTo(period);
+    }
+
+    @Test
+    void warmUpRestartsAfterIdleness() {
+        long period = Duration.ofMillis(100).toNanos();
+        long warmUp = Duration.ofSeconds(1).toNanos();
+        var limiter = new TokenBucket(100, 10, period, warmUp, 3);
+        long t0 = 1_000_000_000L;
+
+        assertThat(limiter.tryAcquire(t0, 1).isAcquired()).isTrue();
+        assertThat(limiter.availableTokens(t0 + warmUp - 1)).isGreaterThan(10);
+
+        long idle = t0 + warmUp;
+        assertThat(limiter.availableTokens(idle)).isEqualTo(10);
+        assertThat(limiter.retryAfterNanos(idle, 20)).isGreaterThan(period);
+        assertThat(limiter.tryAcquire(idle, 20).isAcquired()).isFalse();
+        assertThat(limiter.tryAcquire(idle, 10).isAcquired()).isTrue();
+    }
+
+    @Test
+    void continuousModeRefillsBetweenPeriodEdges() {
+        long second = Duration.ofSeconds(1).toNanos();
+        var limiter = TokenBucket.continuous(10, 10, second);
+        long t0 = 1_000L;
+
+        assertThat(limiter.tryAcquire(t0, 10).isAcquired()).isTrue();
+        assertThat(limiter.availableTokens(t0 + second / 10)).isEqualTo(1);
+        assertThat(limiter.availableTokens(t0 + second / 2)).isEqualTo(5);
+        var periodic = new TokenBucket(10, 10, second);
+        assertThat(periodic.tryAcquire(t0, 10).isAcquired()).isTrue();
+        assertThat(periodic.availableTokens(t0 + second / 2)).isZero();
+
+        long t1 = t0 + 3 * second / 20;
+        assertThat(limiter.tryAcquire(t1, 1).isAcquired()).isTrue();
+        assertThat(limiter.retryAfterNanos(t1, 1)).isEqualTo(second / 20);
+    }
+
+    @Test
+    void continuousModeKeepsFractionalTokensExactly() {
+        // 3 tokens per 1000 ns, i.e. one every 333.33 ns
+        var limiter = TokenBucket.continuous(5, 3, 1_000);
+        assertThat(limiter.tryAcquire(0, 5).isAcquired()).isTrue();
+        assertThat(limiter.retryAfterNanos(0, 1)).isEqualTo(334);
+
+        var early = limiter.tryAcquire(333, 1);
+        assertThat(early.isAcquired()).isFalse();
+        assertThat(early.retryAfterNanos()).isEqualTo(1);
+        assertThat(limiter.tryAcquire(334, 1).isAcquired()).isTrue();
+
+        // 2/1000 of a token carried over, the next one is due at 667 rather than 668
+        assertThat(limiter.retryAfterNanos(334, 1)).isEqualTo(333);
+        assertThat(limiter.tryAcquire(666, 1).isAcquired()).isFalse();
+        assertThat(limiter.tryAcquire(667, 1).isAcquired()).isTrue();
+        assertThat(limiter.availableTokens(667 + 3_000)).isEqualTo(5);
+    }
+
+    @Test
+    void continuousModeRetryAfterIsExact() {
+        var limiter = TokenBucket.continuous(50, 7, 1_001);
+        var random = new SplittableRandom(48);
+        long now = 0;
+        for (int i = 0; i < 10_000; i++) {
+            now += random.nextLong(300);
+            long permits = 1 + random.nextLong(20);
+            limiter.tryAcquire(now, permits);
+
+            long wanted = 1 + random.nextLong(50);
+            long retryAfter = limiter.retryAfterNanos(now, wanted);
+            assertThat(limiter.availableTokens(now + retryAfter)).isGreaterThanOrEqualTo(wanted);
+            if (retryAfter > 0) {
+                assertThat(limiter.availableTokens(now + retryAfter - 1)).isLessThan(wanted);
+            }
+        }
+    }
+
+    @Test
+    void continuousModeSaturatesInsteadOfOverflowing() {
+        var limiter = TokenBucket.continuous(1_000, 1_000, Long.MAX_VALUE / 4);
+        assertThat(limiter.tryAcquire(0, 1_000).isAcquired()).isTrue();
+        assertThat(limiter.retryAfterNanos(1, 1_000)).isPositive();
+        assertThat(limiter.availableTokens(Long.MAX_VALUE)).isEqualTo(1_000);
+    }
 }
@@ -0,0 +1,207 @@
+package io.github.vkunitsyn.ratelimiter.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(30)
+class ClusterRateLimiterTest {
+    private static final long WINDOW = Duration.ofMinutes(1).toNanos();
+    private static final long NEVER = Duration.ofDays(1).toNanos(); // gossip only when the test says so
+
+    private final List<ClusterRateLimiter> nodes = new ArrayList<>();
+
+    @AfterEach
+    void closeNodes() throws IOException {
+        for (ClusterRateLimiter node : nodes) {
+            node.close();
+        }
+    }
+
+    @Test
+    void nodesConvergeOnTheGlobalCount() throws Exception {
+        startCluster(3, 30, NEVER);
+        long now = 5 * WINDOW + 1_000;
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(nodes.get(0).tryAcquire(now, 1).isAcquired()).isTrue();
+        }
+        // the first ration is a third of the rate
+        var rejected = nodes.get(0).tryAcquire(now, 1);
+        assertThat(rejected.isAcquired()).isFalse();
+        assertThat(rejected.retryAfterNanos()).isEqualTo(WINDOW - 1_000); // the window ends before the next round
+
+        nodes.get(0).gossipNow();
+        awaitConsumed(now, 10);
+        // nothing heard from the peers yet, so no new ration
+        assertThat(nodes.get(0).availableTokens(now)).isZero();
+
+        nodes.get(1).gossipNow();
+        nodes.get(2).gossipNow();
+        while (nodes.get(0).availableTokens(now) == 0) {
+            nodes.get(0).gossipNow();
+            Thread.sleep(1);
+        }
+        assertThat(nodes.get(0).availableTokens(now)).isEqualTo(7); // ceil(20 / 3)
+    }
+
+    @Test
+    void retryAfterIsZeroWheneverAnAcquisitionWouldBeGranted() throws Exception {
+        startCluster(2, 100, NEVER);
+        long now = 6 * WINDOW;
+        var first = nodes.get(0);
+        var second = nodes.get(1);
+
+        assertThat(second.tryAcquire(now, 50).isAcquired()).isTrue();
+        while (second.availableTokens(now) == 0) {
+            first.gossipNow();
+            second.gossipNow(); // renews to ceil(50 / 2) once it has heard from the first node
+            Thread.sleep(1);
+        }
+        assertThat(second.tryAcquire(now, 25).isAcquired()).isTrue();
+        second.gossipNow();
+        awaitConsumed(now, 75);
+
+        // the first node enters the window with its full ration of 50, but only 25 are left cluster-wide
+        for (long permits = 1; permits <= 50; permits++) {
+            boolean fits = permits <= first.availableTokens(now);
+            assertThat(first.retryAfterNanos(now, permits) == 0).as("%d permits", permits).isEqualTo(fits);
+        }
+        assertThat(first.tryAcquire(now, 20).isAcquired()).isTrue();
+        assertThat(first.retryAfterNanos(now, 6)).isPositive();
+        assertThat(first.tryAcquire(now, 6).isAcquired()).isFalse();
+
+        // a new window starts with a fresh ration, whatever the last renewal left
+        assertThat(second.availableTokens(now + WINDOW)).isEqualTo(50);
+    }
+
+    @Test
+    void mergesOnlyMembersAndCurrentWindows() throws Exception {
+        List<InetSocketAddress> members = startCluster(2, 100, NEVER);
+        long now = 4 * WINDOW;
+        nodes.remove(1).close();
+
+        try (DatagramChannel stranger = DatagramChannel.open().bind(null);
+                DatagramChannel member = DatagramChannel.open().bind(members.get(1))) {
+            stranger.send(gossip(1, 4, 50), members.get(0));
+            member.send(gossip(0, 4, 50), members.get(0)); // claims to be the receiver itself
+            member.send(gossip(1, Long.MAX_VALUE / WINDOW, 50), members.get(0));
+            member.send(gossip(1, 4, 7), members.get(0));
+            awaitConsumed(now, 7);
+        }
+        assertThat(nodes.get(0).tryAcquire(now, 50).isAcquired()).isTrue();
+    }
+
+    @Test
+    void rationsKeepTheClusterWithinTheLimit() throws Exception {
+        startCluster(3, 30, NEVER);
+        long now = 7 * WINDOW;
+        long granted = 0;
+
+        // two busy nodes, one idle; every round ends with a full exchange of state
+        for (int round = 0; round < 10; round++) {
+            for (int node = 0; node < 2; node++) {
+                while (nodes.get(node).tryAcquire(now, 1).isAcquired()) {
+                    granted++;
+                }
+            }
+            for (ClusterRateLimiter node : nodes) {
+                node.gossipNow();
+            }
+            awaitConsumed(now, granted);
+        }
+
+        // at most one unseen ration of ceil(30 / 3) per other node
+        assertThat(granted).isBetween(30L, 30L + 2 * 10);
+        for (ClusterRateLimiter node : nodes) {
+            assertThat(node.tryAcquire(now, 1).isAcquired()).isFalse();
+        }
+        assertThat(nodes.get(2).tryAcquire(now + WINDOW, 10).isAcquired()).isTrue();
+    }
+
+    @Test
+    void periodicGossipSpreadsState() throws Exception {
+        startCluster(2, 100, Duration.ofMillis(10).toNanos());
+        long now = 3 * WINDOW;
+
+        assertThat(nodes.get(1).tryAcquire(now, 5).isAcquired()).isTrue();
+        awaitConsumed(now, 5);
+    }
+
+    @Test
+    void blockingAcquireUsesTheSharedEpochClock() throws Exception {
+        startCluster(2, 100, NEVER);
+        var node = nodes.get(0);
+
+        node.acquire(3);
+        assertThat(node.consumed(node.nowNanos())).isEqualTo(3);
+        long epochSecond = Instant.now().getEpochSecond();
+        assertThat(node.nowNanos() / 1_000_000_000L).isBetween(epochSecond - 1, epochSecond + 1);
+    }
+
+    @Test
+    void rejectsInvalidParameters() throws Exception {
+        startCluster(2, 10, NEVER);
+        assertThatThrownBy(() -> nodes.get(0).tryAcquire(0, 6)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ClusterRateLimiter(10, WINDOW, 2, freeAddresses(2), NEVER))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private List<InetSocketAddress> startCluster(int size, long rate, long gossipIntervalNanos) throws IOException {
+        List<InetSocketAddress> members = freeAddresses(size);
+        for (int i = 0; i < size; i++) {
+            nodes.add(new ClusterRateLimiter(rate, WINDOW, i, members, gossipIntervalNanos));
+        }
+        return members;
+    }
+
+    /** A two-member gossip datagram in which {@code sender} reports {@code permits} granted by itself. */
+    private static ByteBuffer gossip(int sender, long window, long permits) {
+        ByteBuffer message = ByteBuffer.allocate(4 + 4 + 8 + 4 + 8 * 2)
+                .putInt(0x52_4C_47_43)
+                .putInt(sender)
+                .putLong(window)
+                .putInt(2)
+                .putLong(sender == 0 ? permits : 0)
+                .putLong(sender == 1 ? permits : 0);
+        return message.flip();
+    }
+
+    private void awaitConsumed(long nowNanos, long expected) throws InterruptedException {
+        for (ClusterRateLimiter node : nodes) {
+            while (node.consumed(nowNanos) != expected) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static List<InetSocketAddress> freeAddresses(int count) throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        List<DatagramChannel> probes = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                DatagramChannel probe =
+                        DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                probes.add(probe);
+                addresses.add((InetSocketAddress) probe.getLocalAddress());
+            }
+        } finally {
+            for (DatagramChannel probe : probes) {
+                probe.close();
+            }
+        }
+        return addresses;
+    }
+}
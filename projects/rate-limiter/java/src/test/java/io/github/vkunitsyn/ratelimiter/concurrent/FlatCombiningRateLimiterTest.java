@@ -0,0 +1,83 @@
+package io.github.vkunitsyn.ratelimiter.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.vkunitsyn.ratelimiter.FixedWindowCounter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter.AcquireResult;
+import io.github.vkunitsyn.ratelimiter.SpacingLeakyBucket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(20)
+class FlatCombiningRateLimiterTest {
+
+    @Test
+    void grantsExactlyWhatTheDelegateAllowsUnderContention() throws Exception {
+        var limiter = new FlatCombiningRateLimiter(new FixedWindowCounter(10_000, Duration.ofHours(1).toNanos()), 4);
+        AtomicLong granted = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    if (limiter.tryAcquire(1).isAcquired()) {
+                        granted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(granted.get()).isEqualTo(10_000);
+        assertThat(limiter.availableTokens()).isZero();
+    }
+
+    @Test
+    void combinesTryAcquireUpTo() throws Exception {
+        var limiter = new FlatCombiningRateLimiter(new FixedWindowCounter(10_000, Duration.ofHours(1).toNanos()), 4);
+        AtomicLong granted = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    if (limiter.tryAcquireUpTo(3, 1) instanceof AcquireResult.Acquired(long permits)) {
+                        granted.addAndGet(permits);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(granted.get()).isEqualTo(10_000);
+        assertThat(limiter.tryAcquireUpTo(1_000, 5, 1).isAcquired()).isFalse();
+    }
+
+    @Test
+    void keepsAnExplicitClock() {
+        long interval = Duration.ofMillis(100).toNanos();
+        var limiter = new FlatCombiningRateLimiter(new SpacingLeakyBucket(1, interval));
+
+        assertThat(limiter.tryAcquire(1_000, 1).isAcquired()).isTrue();
+        var rejected = limiter.tryAcquire(1_000, 1);
+        assertThat(rejected.isAcquired()).isFalse();
+        assertThat(rejected.retryAfterNanos()).isEqualTo(interval);
+        assertThat(limiter.retryAfterNanos(1_000, 1)).isEqualTo(interval);
+        assertThat(limiter.tryAcquire(1_000 + interval, 1).isAcquired()).isTrue();
+    }
+
+    @Test
+    void delegateExceptionsReachTheCaller() {
+        var limiter = new FlatCombiningRateLimiter(new SpacingLeakyBucket(5, 1_000));
+
+        assertThatThrownBy(() -> limiter.tryAcquire(6)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(limiter.tryAcquire(5).isAcquired()).isTrue();
+    }
+}
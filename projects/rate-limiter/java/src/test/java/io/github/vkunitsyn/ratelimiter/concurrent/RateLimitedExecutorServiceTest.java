@@ -0,0 +1,134 @@
+package io.github.vkunitsyn.ratelimiter.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.vkunitsyn.ratelimiter.SpacingLeakyBucket;
+import io.github.vkunitsyn.ratelimiter.concurrent.RateLimitedExecutorService.OverflowPolicy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(10)
+class RateLimitedExecutorServiceTest {
+    private static final Duration HOUR = Duration.ofHours(1);
+
+    @Test
+    void releasesTasksAtTheConfiguredInterval() throws Exception {
+        Duration interval = Duration.ofMillis(20);
+        var executor = new RateLimitedExecutorService(interval, 1, 16, OverflowPolicy.REJECT);
+        List<Long> starts = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++) {
+            executor.execute(() -> {
+                synchronized (starts) {
+                    starts.add(System.nanoTime());
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(starts).hasSize(6);
+        // five intervals between dispatches; task start latency may eat into the first one
+        long span = starts.getLast() - starts.getFirst();
+        assertThat(span).isGreaterThanOrEqualTo(4 * interval.toNanos());
+    }
+
+    @Test
+    void eligibleTasksAreDispatchedTogether() throws Exception {
+        // a burst of 3 lets the first three queued tasks out at once
+        var executor = new RateLimitedExecutorService(HOUR, 3, 16, OverflowPolicy.REJECT);
+        var started = new CountDownLatch(3);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(started::countDown);
+        }
+
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(executor.shutdownNow()).hasSize(1);
+    }
+
+    @Test
+    void stopsWhenTheDelegateRejects() throws Exception {
+        var delegate = Executors.newSingleThreadExecutor();
+        delegate.shutdown(); // shut down behind the executor's back
+        var executor = new RateLimitedExecutorService(
+                new SpacingLeakyBucket(10, HOUR.toNanos()), 16, OverflowPolicy.REJECT, delegate);
+
+        Future<?> task = executor.submit(() -> {});
+        while (!executor.isShutdown()) {
+            Thread.sleep(1);
+        }
+
+        // it already holds its permit, but it was never started
+        assertThat(task.isCancelled()).isTrue();
+        assertThatThrownBy(() -> executor.execute(() -> {})).isInstanceOf(RejectedExecutionException.class);
+        assertThat(executor.shutdownNow()).containsExactly((Runnable) task);
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void rejectsWhenTheQueueIsFull() throws Exception {
+        var executor = new RateLimitedExecutorService(HOUR, 1, 2, OverflowPolicy.REJECT);
+        awaitFirstTaskOut(executor);
+
+        executor.execute(() -> {});
+        executor.execute(() -> {});
+        assertThatThrownBy(() -> executor.execute(() -> {})).isInstanceOf(RejectedExecutionException.class);
+        assertThat(executor.shutdownNow()).hasSize(2);
+    }
+
+    @Test
+    void discardOldestCancelsTheDroppedFuture() throws Exception {
+        var executor = new RateLimitedExecutorService(HOUR, 1, 1, OverflowPolicy.DISCARD_OLDEST);
+        awaitFirstTaskOut(executor);
+
+        Future<?> oldest = executor.submit(() -> {});
+        Future<?> newest = executor.submit(() -> {});
+
+        assertThat(oldest.isCancelled()).isTrue();
+        assertThat(newest.isDone()).isFalse();
+        assertThat(executor.queued()).isEqualTo(1);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void blockingProducersAreReleasedByShutdown() throws Exception {
+        var executor = new RateLimitedExecutorService(
+                new SpacingLeakyBucket(1, HOUR.toNanos()),
+                1,
+                OverflowPolicy.BLOCK,
+                Executors.newVirtualThreadPerTaskExecutor());
+        awaitFirstTaskOut(executor);
+        executor.execute(() -> {});
+
+        var rejected = new CountDownLatch(1);
+        Thread producer = Thread.ofVirtual().start(() -> {
+            try {
+                executor.execute(() -> {});
+            } catch (RejectedExecutionException e) {
+                rejected.countDown();
+            }
+        });
+        Thread.sleep(50);
+        assertThat(rejected.getCount()).isEqualTo(1); // still waiting for space
+
+        executor.shutdownNow();
+        producer.join();
+        assertThat(rejected.getCount()).isZero();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static void awaitFirstTaskOut(RateLimitedExecutorService executor) throws InterruptedException {
+        var started = new CountDownLatch(1);
+        executor.execute(started::countDown);
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+}
@@ -0,0 +1,204 @@
+package io.github.vkunitsyn.ratelimiter.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.vkunitsyn.ratelimiter.FixedWindowCounter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.TokenBucket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(10)
+class RateLimitingProcessorTest {
+
+    @Test
+    void passesItemsInOrderAtTheLimitedRate() throws Exception {
+        long period = Duration.ofMillis(50).toNanos();
+        var processor = new RateLimitingProcessor<Integer>(new TokenBucket(5, 5, period), 8);
+        var upstream = new ListPublisher(IntStream.range(0, 15).boxed().toList());
+        var downstream = new CollectingSubscriber(Long.MAX_VALUE);
+
+        long start = System.nanoTime();
+        upstream.subscribe(processor);
+        processor.subscribe(downstream);
+        assertThat(downstream.done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(downstream.items).isEqualTo(IntStream.range(0, 15).boxed().toList());
+        assertThat(downstream.error).isNull();
+        // 5 right away, then 5 per period
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(2 * period);
+    }
+
+    @Test
+    void upstreamDemandIsBoundedByTheBuffer() throws Exception {
+        var limiter = new FixedWindowCounter(3, Duration.ofHours(1).toNanos());
+        var processor = new RateLimitingProcessor<Integer>(limiter, item -> 1, 4, 2, 4);
+        var upstream = new ListPublisher(IntStream.range(0, 100).boxed().toList());
+        var downstream = new CollectingSubscriber(Long.MAX_VALUE);
+
+        upstream.subscribe(processor);
+        processor.subscribe(downstream);
+
+        // 3 items passed, then the window is exhausted: upstream got the buffer plus the freed slots, no more
+        assertThat(downstream.items).hasSize(3);
+        assertThat(upstream.requested).isLessThanOrEqualTo(3 + 4);
+        downstream.subscription.cancel();
+    }
+
+    @Test
+    void releasesWeightedItemsInBatches() throws Exception {
+        var limiter = new RecordingLimiter(new TokenBucket(100, 100, Duration.ofHours(1).toNanos()));
+        var processor = new RateLimitingProcessor<Integer>(limiter, item -> item, 16, 8, 4);
+        var upstream = new ListPublisher(List.of(10, 20, 30, 5, 1, 2));
+        var downstream = new CollectingSubscriber(Long.MAX_VALUE);
+
+        upstream.subscribe(processor);
+        processor.subscribe(downstream);
+        assertThat(downstream.done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(downstream.items).containsExactly(10, 20, 30, 5, 1, 2);
+        assertThat(limiter.acquired).containsExactly(65L, 3L); // at most 4 items per batch
+    }
+
+    @Test
+    void downstreamDemandIsRespected() throws Exception {
+        var processor = new RateLimitingProcessor<Integer>(new TokenBucket(100, 1, 1_000_000), 8);
+        var upstream = new ListPublisher(IntStream.range(0, 10).boxed().toList());
+        var downstream = new CollectingSubscriber(2);
+
+        upstream.subscribe(processor);
+        processor.subscribe(downstream);
+        assertThat(downstream.items).containsExactly(0, 1);
+
+        downstream.subscription.request(100);
+        assertThat(downstream.done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(downstream.items).hasSize(10);
+    }
+
+    @Test
+    void invalidWeightFailsTheStream() throws Exception {
+        var processor = new RateLimitingProcessor<Integer>(new TokenBucket(10, 1, 1_000_000), item -> 11, 4, 2, 4);
+        var upstream = new ListPublisher(List.of(1, 2));
+        var downstream = new CollectingSubscriber(Long.MAX_VALUE);
+
+        upstream.subscribe(processor);
+        processor.subscribe(downstream);
+
+        assertThat(downstream.done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(downstream.error).isInstanceOf(IllegalArgumentException.class);
+        assertThat(upstream.cancelled).isTrue();
+    }
+
+    /** Emits synchronously from request(), records the total demand. */
+    private static final class ListPublisher implements Flow.Publisher<Integer> {
+        private final List<Integer> items;
+        private int next;
+        volatile long requested;
+        volatile boolean cancelled;
+
+        ListPublisher(List<Integer> items) {
+            this.items = items;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Integer> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private boolean emitting;
+                private long pending;
+
+                @Override
+                public void request(long n) {
+                    requested += n;
+                    pending += n;
+                    if (emitting) {
+                        return;
+                    }
+                    emitting = true;
+                    while (pending > 0 && next < items.size() && !cancelled) {
+                        pending--;
+                        subscriber.onNext(items.get(next++));
+                    }
+                    emitting = false;
+                    if (next == items.size() && !cancelled) {
+                        cancelled = true; // nothing more to send
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    private static final class CollectingSubscriber implements Flow.Subscriber<Integer> {
+        private final long initialDemand;
+        final List<Integer> items = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Throwable error;
+        Flow.Subscription subscription;
+
+        CollectingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialDemand);
+        }
+
+        @Override
+        public synchronized void onNext(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+
+    private static final class RecordingLimiter implements RateLimiter {
+        private final RateLimiter delegate;
+        final List<Long> acquired = new ArrayList<>();
+
+        RecordingLimiter(RateLimiter delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public AcquireResult tryAcquire(long nowNanos, long permits) {
+            AcquireResult result = delegate.tryAcquire(nowNanos, permits);
+            if (result.isAcquired()) {
+                acquired.add(permits);
+            }
+            return result;
+        }
+
+        @Override
+        public long availableTokens(long nowNanos) {
+            return delegate.availableTokens(nowNanos);
+        }
+
+        @Override
+        public long retryAfterNanos(long nowNanos, long permits) {
+            return delegate.retryAfterNanos(nowNanos, permits);
+        }
+    }
+}
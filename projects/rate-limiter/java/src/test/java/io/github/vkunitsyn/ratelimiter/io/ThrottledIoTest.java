@@ -0,0 +1,181 @@
+package io.github.vkunitsyn.ratelimiter.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.TokenBucket;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class ThrottledIoTest {
+    private static final int MiB = 1 << 20;
+
+    @Test
+    void inputStreamAcquiresInGrowingChunks() throws Exception {
+        byte[] data = randomBytes(4 * MiB);
+        var limiter = new CountingLimiter();
+
+        byte[] copy;
+        try (var in = new ThrottledInputStream(new ByteArrayInputStream(data), limiter, MiB)) {
+            copy = in.readAllBytes();
+        }
+
+        assertThat(copy).isEqualTo(data);
+        // 64K, 128K, ..., 1M, then 1M chunks: 5 calls for the first 1984K, 3 for the rest
+        assertThat(limiter.chunks.subList(0, 6))
+                .containsExactly(64L << 10, 128L << 10, 256L << 10, 512L << 10, 1L << 20, 1L << 20);
+        assertThat(limiter.chunks).hasSize(8);
+    }
+
+    @Test
+    void outputStreamKeepsToTheRate() throws Exception {
+        // 10 MiB/s with a 1 MiB burst: 2 MiB take at least the 100ms needed for the second MiB
+        var limiter = new TokenBucket(MiB, 10 << 10, Duration.ofMillis(1).toNanos());
+        byte[] data = randomBytes(2 * MiB);
+        var sink = new ByteArrayOutputStream();
+
+        long start = System.nanoTime();
+        try (OutputStream out = new ThrottledOutputStream(sink, limiter, 256 << 10)) {
+            for (int off = 0; off < data.length; off += 8192) {
+                out.write(data, off, 8192);
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        assertThat(sink.toByteArray()).isEqualTo(data);
+        assertThat(elapsedNanos).isBetween(Duration.ofMillis(90).toNanos(), Duration.ofSeconds(2).toNanos());
+    }
+
+    @Test
+    void channelsCopyEveryByte() throws Exception {
+        byte[] data = randomBytes(MiB + 123);
+        var limiter = new CountingLimiter();
+        var sink = new ByteArrayOutputStream();
+
+        try (var in = new ThrottledReadableByteChannel(
+                        Channels.newChannel(new ByteArrayInputStream(data)), limiter, 256 << 10);
+                var out = new ThrottledWritableByteChannel(Channels.newChannel(sink), limiter, 256 << 10)) {
+            ByteBuffer buffer = ByteBuffer.allocate(100_000);
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+
+        assertThat(sink.toByteArray()).isEqualTo(data);
+        assertThat(limiter.total()).isBetween(2L * data.length, 2L * data.length + 2 * (256 << 10));
+    }
+
+    @Test
+    void transferToStopsAtTheEndOfTheFile() throws Exception {
+        byte[] data = randomBytes(3 * MiB + 7);
+        Path file = Files.createTempFile("throttled", ".bin");
+        try {
+            Files.write(file, data);
+            var limiter = new CountingLimiter();
+            var sink = new ByteArrayOutputStream();
+
+            long transferred;
+            try (var source = FileChannel.open(file, StandardOpenOption.READ)) {
+                transferred = new ThrottledTransfer(limiter, MiB)
+                        .transferTo(source, 0, Long.MAX_VALUE, Channels.newChannel(sink));
+            }
+
+            assertThat(transferred).isEqualTo(data.length);
+            assertThat(sink.toByteArray()).isEqualTo(data);
+            assertThat(limiter.chunks).hasSize(4); // every chunk asks for as much as allowed
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void transferKeepsCreditATargetDidNotTake() throws Exception {
+        byte[] data = randomBytes(100);
+        Path file = Files.createTempFile("throttled", ".bin");
+        try {
+            Files.write(file, data);
+            var limiter = new CountingLimiter();
+            var sink = new ByteArrayOutputStream();
+            var full = new AtomicBoolean(true);
+            WritableByteChannel target = new WritableByteChannel() {
+                private final WritableByteChannel channel = Channels.newChannel(sink);
+
+                @Override
+                public int write(ByteBuffer src) throws IOException {
+                    return full.get() ? 0 : channel.write(src);
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() {}
+            };
+
+            var transfer = new ThrottledTransfer(limiter, MiB);
+            try (var source = FileChannel.open(file, StandardOpenOption.READ)) {
+                // like a full non-blocking socket: nothing sent, the 100 bytes paid for stay with the transfer
+                assertThat(transfer.transferTo(source, 0, data.length, target)).isZero();
+                full.set(false);
+                assertThat(transfer.transferTo(source, 0, data.length, target)).isEqualTo(data.length);
+            }
+
+            assertThat(sink.toByteArray()).isEqualTo(data);
+            assertThat(limiter.chunks).containsExactly(100L);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new SplittableRandom(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    /** Grants everything and remembers the chunks. */
+    private static final class CountingLimiter implements RateLimiter {
+        final List<Long> chunks = new ArrayList<>();
+
+        @Override
+        public AcquireResult tryAcquire(long nowNanos, long permits) {
+            chunks.add(permits);
+            return new AcquireResult.Acquired(permits);
+        }
+
+        @Override
+        public long availableTokens(long nowNanos) {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public long retryAfterNanos(long nowNanos, long permits) {
+            return 0;
+        }
+
+        long total() {
+            return chunks.stream().mapToLong(Long::longValue).sum();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package io.github.vkunitsyn.ratelimiter.jfr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.vkunitsyn.ratelimiter.FixedWindowCounter;
+import io.github.vkunitsyn.ratelimiter.PerKeyRateLimiter;
+import io.github.vkunitsyn.ratelimiter.TokenBucket;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+class JfrRateLimiterTest {
+    private static final long PERIOD = Duration.ofMillis(20).toNanos();
+
+    @Test
+    void recordsRejectionsAndSampledAcquisitions() throws Exception {
+        List<RecordedEvent> events;
+        try (var recording = new Recording();
+                var limiter = new JfrRateLimiter("orders", new TokenBucket(2, 1, PERIOD), 1)) {
+            recording.enable(RejectedAcquireEvent.NAME);
+            recording.enable(SampledAcquireEvent.NAME);
+            recording.start();
+
+            limiter.tryAcquire(1_000, 2);
+            limiter.tryAcquire(1_000, 1);
+
+            events = stopAndRead(recording);
+        }
+
+        RecordedEvent acquired = single(events, SampledAcquireEvent.NAME);
+        assertThat(acquired.getString("limiter")).isEqualTo("orders");
+        assertThat(acquired.getLong("permits")).isEqualTo(2);
+
+        RecordedEvent rejected = single(events, RejectedAcquireEvent.NAME);
+        assertThat(rejected.getLong("permits")).isEqualTo(1);
+        assertThat(rejected.getLong("retryAfterNanos")).isEqualTo(PERIOD);
+    }
+
+    @Test
+    void recordsTryAcquireUpToWithTheGrantedPermits() throws Exception {
+        List<RecordedEvent> events;
+        try (var recording = new Recording();
+                var limiter = new JfrRateLimiter("uploads", new TokenBucket(3, 1, PERIOD), 1)) {
+            recording.enable(RejectedAcquireEvent.NAME);
+            recording.enable(SampledAcquireEvent.NAME);
+            recording.start();
+
+            assertThat(limiter.tryAcquireUpTo(1_000, 5, 1).isAcquired()).isTrue();
+            assertThat(limiter.tryAcquireUpTo(1_000, 5, 2).isAcquired()).isFalse();
+
+            events = stopAndRead(recording);
+        }
+
+        assertThat(single(events, SampledAcquireEvent.NAME).getLong("permits")).isEqualTo(3);
+        assertThat(single(events, RejectedAcquireEvent.NAME).getLong("permits")).isEqualTo(2);
+    }
+
+    @Test
+    void recordsKeysOfKeyedRejections() throws Exception {
+        var limiter = new JfrKeyedRateLimiter<String>(
+                "api", new PerKeyRateLimiter<>(() -> new FixedWindowCounter(1, PERIOD)));
+        List<RecordedEvent> events;
+        try (var recording = new Recording()) {
+            recording.enable(RejectedAcquireEvent.NAME);
+            recording.start();
+
+            limiter.tryAcquire("10.0.0.1", 0, 1);
+            limiter.tryAcquire("10.0.0.1", 0, 1);
+
+            events = stopAndRead(recording);
+        }
+
+        RecordedEvent rejected = single(events, RejectedAcquireEvent.NAME);
+        assertThat(rejected.getString("limiter")).isEqualTo("api");
+        assertThat(rejected.getString("key")).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    void recordsLongWaitsAndState() throws Exception {
+        List<RecordedEvent> events;
+        try (var recording = new Recording();
+                var limiter = new JfrRateLimiter("jobs", new TokenBucket(1, 1, PERIOD))) {
+            recording.enable(AcquireWaitEvent.NAME).withThreshold(Duration.ofMillis(5));
+            recording.enable(LimiterStateEvent.NAME).withPeriod(Duration.ofMillis(10));
+            recording.start();
+
+            assertThat(limiter.acquire(1)).isLessThan(PERIOD); // under the threshold, not recorded
+            assertThat(limiter.acquire(1)).isPositive();
+            Thread.sleep(50);
+
+            events = stopAndRead(recording);
+        }
+
+        RecordedEvent wait = single(events, AcquireWaitEvent.NAME);
+        assertThat(wait.getString("limiter")).isEqualTo("jobs");
+        assertThat(wait.getDuration().toNanos()).isGreaterThanOrEqualTo(Duration.ofMillis(5).toNanos());
+
+        assertThat(events.stream()
+                        .filter(e -> e.getEventType().getName().equals(LimiterStateEvent.NAME))
+                        .anyMatch(e -> e.getString("limiter").equals("jobs")))
+                .isTrue();
+    }
+
+    @Test
+    void unclosedLimitersCanBeCollected() throws Exception {
+        var limiter = new JfrRateLimiter("forgotten", new TokenBucket(1, 1, PERIOD));
+        var reference = new WeakReference<>(limiter);
+        limiter = null;
+
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(reference.get()).isNull();
+    }
+
+    private static List<RecordedEvent> stopAndRead(Recording recording) throws Exception {
+        recording.stop();
+        Path file = Files.createTempFile("rate-limiter", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream()
+                .filter(e -> e.getEventType().getName().equals(name))
+                .toList();
+        assertThat(matching).hasSize(1);
+        return matching.getFirst();
+    }
+}
@@ -0,0 +1,117 @@
+package io.github.vkunitsyn.ratelimiter.shared;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.shared.SharedMemoryRateLimiter.Algorithm;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+class SharedMemoryRateLimiterTest {
+    private static final long PERIOD = Duration.ofMillis(100).toNanos();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void separateMappingsShareOneLimit() throws IOException {
+        Path file = dir.resolve("limits");
+        // two mappings of the same file, as two processes would have
+        try (var first = new SharedMemoryRateLimiter(file, Algorithm.GCRA, 10, PERIOD, 16);
+                var second = new SharedMemoryRateLimiter(file, Algorithm.GCRA, 10, PERIOD, 16)) {
+            long t0 = 1_000_000_000L;
+
+            assertThat(first.tryAcquire("api-key-1", t0, 6).isAcquired()).isTrue();
+            assertThat(second.availableTokens("api-key-1", t0)).isEqualTo(4);
+            var rejected = second.tryAcquire("api-key-1", t0, 5);
+            assertThat(rejected.isAcquired()).isFalse();
+            assertThat(rejected.retryAfterNanos()).isEqualTo(PERIOD);
+            assertThat(second.tryAcquire("api-key-1", t0 + PERIOD, 5).isAcquired()).isTrue();
+        }
+        // the state outlives the mappings
+        try (var reopened = new SharedMemoryRateLimiter(file, Algorithm.GCRA, 10, PERIOD, 16)) {
+            assertThat(reopened.availableTokens("api-key-1", 1_000_000_000L + PERIOD)).isZero();
+        }
+    }
+
+    @Test
+    void fixedWindowGrantsExactlyTheLimitAcrossMappingsAndThreads() throws Exception {
+        Path file = dir.resolve("window");
+        long window = Duration.ofHours(1).toNanos();
+        try (var first = new SharedMemoryRateLimiter(file, Algorithm.FIXED_WINDOW, 5_000, window, 1);
+                var second = new SharedMemoryRateLimiter(file, Algorithm.FIXED_WINDOW, 5_000, window, 1)) {
+            AtomicLong granted = new AtomicLong();
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                RateLimiter limiter = (t % 2 == 0 ? first : second).slot(0);
+                threads.add(Thread.ofPlatform().start(() -> {
+                    for (int i = 0; i < 1_000; i++) {
+                        if (limiter.tryAcquire(window / 2, 1).isAcquired()) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertThat(granted.get()).isEqualTo(5_000);
+            assertThat(first.slot(0).retryAfterNanos(window / 2, 1)).isEqualTo(window / 2);
+            assertThat(second.slot(0).availableTokens(window)).isEqualTo(5_000);
+        }
+    }
+
+    @Test
+    void fixedWindowSlotsIdleForAWrappedTagAreStale() throws IOException {
+        try (var limiter = new SharedMemoryRateLimiter(dir.resolve("wrap"), Algorithm.FIXED_WINDOW, 1, 1, 1)) {
+            RateLimiter slot = limiter.slot(0);
+            assertThat(slot.tryAcquire(0, 1).isAcquired()).isTrue();
+
+            // 2^32 - 5 windows later the 32-bit tag reads as 5 windows ahead
+            long later = (1L << 32) - 5;
+            assertThat(slot.availableTokens(later)).isEqualTo(1);
+            assertThat(slot.tryAcquire(later, 1).isAcquired()).isTrue();
+            assertThat(slot.retryAfterNanos(later, 1)).isEqualTo(1);
+            // one window back still counts against the newer window
+            assertThat(slot.tryAcquire(later - 1, 1).isAcquired()).isFalse();
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void blockingAcquireOnASlotUsesTheEpochClock() throws Exception {
+        try (var limiter = new SharedMemoryRateLimiter(dir.resolve("acquire"), Algorithm.GCRA, 1, PERIOD, 1)) {
+            RateLimiter slot = limiter.slot(0);
+            assertThat(slot.tryAcquire(1).isAcquired()).isTrue();
+
+            // against System.nanoTime the epoch-based state would look decades ahead and acquire would never return
+            assertThat(slot.acquire(1)).isBetween(PERIOD / 2, 10 * PERIOD);
+            assertThat(slot.tryAcquire(1).isAcquired()).isFalse();
+        }
+    }
+
+    @Test
+    void refusesAFileWithADifferentLayout() throws IOException {
+        Path file = dir.resolve("limits");
+        try (var limiter = new SharedMemoryRateLimiter(file, Algorithm.GCRA, 10, PERIOD, 16)) {
+            assertThatThrownBy(() -> new SharedMemoryRateLimiter(file, Algorithm.GCRA, 20, PERIOD, 16))
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(() -> new SharedMemoryRateLimiter(file, Algorithm.FIXED_WINDOW, 10, PERIOD, 16))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+
+        Path garbage = Files.write(dir.resolve("garbage"), new byte[128]);
+        assertThatThrownBy(() -> new SharedMemoryRateLimiter(garbage, Algorithm.GCRA, 10, PERIOD, 1))
+                .isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.vkunitsyn.ratelimiter.trace;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import io.github.vkunitsyn.ratelimiter.FixedWindowCounter;
+import io.github.vkunitsyn.ratelimiter.PerKeyRateLimiter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.trace.ParameterSweep.Candidate;
+import io.github.vkunitsyn.ratelimiter.trace.ParameterSweep.Score;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParameterSweepTest {
+    private static final long MS = Duration.ofMillis(1).toNanos();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void scoresThroughputBurstPeakAndRejections() {
+        // 10 requests in the first millisecond, then one per 10 ms for the rest of a second
+        long[] times = new long[110];
+        for (int i = 0; i < 10; i++) {
+            times[i] = i;
+        }
+        for (int i = 10; i < times.length; i++) {
+            times[i] = (i - 9) * 10 * MS;
+        }
+        var workload = Workload.of(times, filled(times.length, 1));
+
+        Score all = ParameterSweep.score(workload, fixed(200, 1_000 * MS), 10 * MS);
+        assertThat(all.rejectionRate()).isZero();
+        assertThat(all.burstPeak()).isEqualTo(10);
+        assertThat(all.admittedPerSecond()).isCloseTo(110, within(0.5));
+
+        Score smoothed = ParameterSweep.score(workload, fixed(2, 10 * MS), 10 * MS);
+        assertThat(smoothed.burstPeak()).isEqualTo(2);
+        assertThat(smoothed.rejectionRate()).isCloseTo(8.0 / 110, within(1e-9));
+    }
+
+    @Test
+    void paretoFrontDropsDominatedConfigurations() {
+        var workload = Workload.synthetic(20_000, 1_000, 10, 7);
+        List<Candidate> candidates = new ArrayList<>();
+        candidates.addAll(ParameterSweep.tokenBuckets(new long[] {5, 50}, new long[] {1, 5}, new long[] {MS, 10 * MS}));
+        candidates.addAll(ParameterSweep.spacingBuckets(new long[] {5, 50}, new long[] {MS / 2, MS}));
+        candidates.addAll(ParameterSweep.fixedWindows(new long[] {5, 50}, new long[] {10 * MS}));
+        candidates.addAll(ParameterSweep.slidingWindows(new long[] {5, 50}, new long[] {10 * MS}));
+
+        List<Score> scores = ParameterSweep.evaluate(workload, candidates, 100 * MS, new ForkJoinPool(4));
+        assertThat(scores).hasSize(candidates.size());
+        for (int i = 0; i < scores.size(); i++) {
+            assertThat(scores.get(i).candidate()).isSameAs(candidates.get(i));
+        }
+
+        List<Score> front = ParameterSweep.paretoFront(scores);
+        assertThat(front).isNotEmpty();
+        assertThat(front.size()).isLessThan(scores.size());
+        for (Score kept : front) {
+            for (Score any : scores) {
+                assertThat(any.dominates(kept)).isFalse();
+            }
+        }
+        for (Score dropped : scores) {
+            if (!front.contains(dropped)) {
+                assertThat(front.stream().anyMatch(kept -> kept.dominates(dropped))).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void evaluatesRecordedTracesPerKey() throws IOException {
+        Path trace = dir.resolve("trace.bin");
+        try (var recorder = new TraceRecorder(trace, 1 << 12)) {
+            RateLimiter a = recorder.wrap(new FixedWindowCounter(1_000, MS));
+            for (int i = 0; i < 100; i++) {
+                a.tryAcquire(i, 1);
+            }
+            var keyed = recorder.wrap(
+                    new PerKeyRateLimiter<Integer>(() -> new FixedWindowCounter(1_000, MS)), Integer::intValue);
+            for (int i = 0; i < 100; i++) {
+                keyed.tryAcquire(7, 100 + i, 2);
+            }
+        }
+
+        var workload = Workload.fromTrace(trace);
+        assertThat(workload.size()).isEqualTo(200);
+        assertThat(workload.keyCount()).isEqualTo(2);
+        assertThat(workload.durationNanos()).isEqualTo(199);
+
+        // 50 permits per key: all of key 0's single permits, 25 of key 7's double ones
+        Score score = ParameterSweep.score(workload, fixed(50, MS), MS);
+        assertThat(score.rejectionRate()).isCloseTo(125.0 / 200, within(1e-9));
+        assertThat(score.burstPeak()).isEqualTo(100);
+    }
+
+    private static Candidate fixed(long rate, long windowNanos) {
+        return new Candidate("fixed", () -> new FixedWindowCounter(rate, windowNanos));
+    }
+
+    private static long[] filled(int length, long value) {
+        long[] array = new long[length];
+        Arrays.fill(array, value);
+        return array;
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.vkunitsyn.ratelimiter.trace;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.github.vkunitsyn.ratelimiter.FixedWindowCounter;
+import io.github.vkunitsyn.ratelimiter.PerKeyRateLimiter;
+import io.github.vkunitsyn.ratelimiter.RateLimiter;
+import io.github.vkunitsyn.ratelimiter.TokenBucket;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TraceRecorderTest {
+    private static final long PERIOD = Duration.ofMillis(10).toNanos();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayOfTheSameConfigurationReproducesEveryDecision() throws IOException {
+        Path trace = dir.resolve("trace.bin");
+        long granted = 0;
+        try (var recorder = new TraceRecorder(trace, 1 << 16)) {
+            RateLimiter limiter = recorder.wrap(new TokenBucket(20, 5, PERIOD));
+            SplittableRandom random = new SplittableRandom(1);
+            long now = 1_000_000_000L;
+            for (int i = 0; i < 10_000; i++) {
+                now += random.nextLong(1_000_000);
+                if (limiter.tryAcquire(now, 1 + random.nextInt(3)).isAcquired()) {
+                    granted++;
+                }
+            }
+            assertThat(recorder.dropped()).isZero();
+        }
+        assertThat(granted).isBetween(1L, 9_999L);
+        // header plus a few bytes per record
+        assertThat(Files.size(trace)).isLessThan(8 + 6 * 10_000);
+
+        var same = TraceReplay.replay(trace, new TokenBucket(20, 5, PERIOD));
+        assertThat(same.records()).isEqualTo(10_000);
+        assertThat(same.divergences()).isZero();
+        assertThat(same.recordsPerSecond()).isPositive();
+
+        var larger = TraceReplay.replay(trace, new TokenBucket(40, 10, PERIOD));
+        // it grants more, which can leave it short of tokens where the recorded one still had some
+        assertThat(larger.rejectedNowGranted()).isGreaterThan(larger.grantedNowRejected());
+    }
+
+    @Test
+    void tracesTryAcquireUpToWithTheGrantedPermits() throws IOException {
+        Path trace = dir.resolve("up-to.bin");
+        try (var recorder = new TraceRecorder(trace, 1 << 16)) {
+            RateLimiter limiter = recorder.wrap(new TokenBucket(20, 5, PERIOD));
+            SplittableRandom random = new SplittableRandom(2);
+            long now = 1_000_000_000L;
+            for (int i = 0; i < 1_000; i++) {
+                now += random.nextLong(1_000_000);
+                limiter.tryAcquireUpTo(now, 8, 1 + random.nextInt(3));
+            }
+        }
+
+        // a grant replays as a tryAcquire of what it got, a rejection as one of the minimum
+        var replay = TraceReplay.replay(trace, new TokenBucket(20, 5, PERIOD));
+        assertThat(replay.records()).isEqualTo(1_000);
+        assertThat(replay.divergences()).isZero();
+    }
+
+    @Test
+    void keepsKeysAndOrderAcrossThreads() throws Exception {
+        Path trace = dir.resolve("keyed.bin");
+        try (var recorder = new TraceRecorder(trace, 1 << 16)) {
+            var limiter = recorder.wrap(hundredPerKey(), Integer::intValue);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int key = t;
+                threads.add(Thread.ofPlatform().start(() -> {
+                    for (int i = 0; i < 1_000; i++) {
+                        limiter.tryAcquire(key, 1_000, 1);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertThat(recorder.dropped()).isZero();
+        }
+
+        var report = TraceReplay.replay(trace, hundredPerKey());
+        assertThat(report.records()).isEqualTo(4_000);
+        assertThat(report.divergences()).isZero();
+
+        // a single shared limiter grants 100 in total instead of 100 per key
+        var shared = TraceReplay.replay(trace, new FixedWindowCounter(100, Duration.ofHours(1).toNanos()));
+        assertThat(shared.grantedNowRejected()).isEqualTo(300);
+    }
+
+    @Test
+    void rejectsFilesThatAreNotTraces() throws IOException {
+        Path file = Files.write(dir.resolve("garbage"), new byte[64]);
+        assertThatThrownBy(() -> TraceReplay.replay(file, new TokenBucket(1, 1, PERIOD)))
+                .isInstanceOf(IOException.class);
+    }
+
+    private static PerKeyRateLimiter<Integer> hundredPerKey() {
+        return new PerKeyRateLimiter<>(() -> new FixedWindowCounter(100, Duration.ofHours(1).toNanos()));
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.vkunitsyn.ratelimiter;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD version of {@link BulkTokenBuckets#refillAndAcquireScalar}. Lives in the {@code vector} source set, the only
+ * code compiled against the incubator module, and is loaded reflectively by {@link BulkTokenBuckets} when the
+ * {@code jdk.incubator.vector} module is present.
+ */
+final class VectorTokenBucketKernel implements BulkTokenBuckets.Kernel {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    VectorTokenBucketKernel() {}
+
+    @Override
+    public int refillAndAcquire(
+            int from,
+            int to,
+            long period,
+            long[] permits,
+            long[] capacity,
+            long[] refillTokens,
+            long[] availableTokens,
+            long[] lastRefillPeriod,
+            long[] retryAfterNanos) {
+        int acquired = 0;
+        int upperBound = from + SPECIES.loopBound(to - from);
+        LongVector currentPeriod = LongVector.broadcast(SPECIES, period);
+        LongVector noRetry = LongVector.zero(SPECIES);
+
+        int i = from;
+        for (; i < upperBound; i += SPECIES.length()) {
+            LongVector cap = LongVector.fromArray(SPECIES, capacity, i);
+            LongVector refill = LongVector.fromArray(SPECIES, refillTokens, i);
+            LongVector last = LongVector.fromArray(SPECIES, lastRefillPeriod, i);
+            LongVector tokens = LongVector.fromArray(SPECIES, availableTokens, i);
+            LongVector requested = LongVector.fromArray(SPECIES, permits, i);
+
+            LongVector periods = currentPeriod.sub(last).max(0).min(cap);
+            tokens = tokens.add(periods.mul(refill)).min(cap);
+            last = last.max(currentPeriod);
+
+            VectorMask<Long> asked = requested.compare(VectorOperators.GT, 0);
+            VectorMask<Long> granted = asked.and(requested.compare(VectorOperators.LE, tokens));
+            tokens = tokens.sub(requested, granted);
+
+            tokens.intoArray(availableTokens, i);
+            last.intoArray(lastRefillPeriod, i);
+            noRetry.blend(-1, asked.andNot(granted)).intoArray(retryAfterNanos, i);
+            acquired += granted.trueCount();
+        }
+
+        // tail shorter than one vector
+        acquired += BulkTokenBuckets.refillAndAcquireScalar(
+                i, to, period, permits, capacity, refillTokens, availableTokens, lastRefillPeriod, retryAfterNanos);
+        return acquired;
+    }
+}